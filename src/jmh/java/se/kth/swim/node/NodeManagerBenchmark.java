@@ -0,0 +1,143 @@
+package se.kth.swim.node;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kth.swim.msg.Pong;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+/**
+ * Throughput of the NodeManager operations run by the SWIM handlers, over the
+ * membership size and the share of members with an update still waiting in
+ * the send buffer. Run with -prof gc for the allocation rate.
+ *
+ * The manager is rebuilt before every iteration. getPong puts the updates it
+ * piggybacked back into the send buffer, so every invocation finds the buffer
+ * at the same fill level; getPongRefill measures that refill alone, to be
+ * subtracted from getPong.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeManagerBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int members;
+
+    @Param({"0", "50", "100"})
+    public int sendBufferFill; //Percentage of the members with an update waiting in the send buffer.
+
+    private InetAddress localHost;
+    private NatedAddress[] addresses;
+    private NodeManager manager;
+    private int next;
+    private int incarnation;
+    private int pingNr;
+    private Pong lastPong;
+
+    @Setup(Level.Trial)
+    public void createAddresses() throws UnknownHostException {
+        localHost = InetAddress.getByName("127.0.0.1");
+        addresses = new NatedAddress[members];
+        for (int i = 0; i < members; i++) {
+            addresses[i] = new BasicNatedAddress(new BasicAddress(localHost, 12345, i + 1));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createManager() {
+        manager = new NodeManager(new BasicNatedAddress(new BasicAddress(localHost, 12345, 0)), 1234);
+        for (NatedAddress address : addresses) {
+            manager.addAlive(address, 0);
+        }
+
+        //Gossip the joins out of the buffer, then put back an update for the requested share of the members.
+        while (manager.getSendBufferSize() > 0) {
+            manager.getPong(addresses[0], pingNr++, 0);
+        }
+        int target = (int) ((long) members * sendBufferFill / 100);
+        for (int i = 0; i < target; i++) {
+            manager.addNewNodeToSendBuffer(addresses[i], 0);
+        }
+
+        next = 0;
+        incarnation = 1;
+        lastPong = manager.getPong(addresses[0], pingNr++, 0);
+        refill(lastPong);
+    }
+
+    //Puts the piggybacked updates back as unsent, the ones dropped for being sent often enough included.
+    private void refill(Pong pong) {
+        for (NatedAddress address : pong.getNewNodes().keySet()) {
+            manager.addNewNodeToSendBuffer(address, 0);
+        }
+    }
+
+    private NatedAddress nextMember() {
+        NatedAddress address = addresses[next];
+        next = next + 1 == members ? 0 : next + 1;
+        return address;
+    }
+
+    @Benchmark
+    public void addAlive() {
+        manager.addAlive(nextMember(), incarnation++);
+    }
+
+    @Benchmark
+    public void copyAlive() {
+        manager.copyAlive(nextMember(), incarnation++);
+    }
+
+    // Suspect a member and let it refute, so the membership stays the same across invocations.
+    @Benchmark
+    public void addSuspected() {
+        NatedAddress address = nextMember();
+        manager.addSuspected(address, incarnation, 1);
+        manager.addAlive(address, incarnation + 1);
+        incarnation += 2;
+    }
+
+    // Declare the members dead in turn. The table keeps its size; after the first lap every call replaces a dead
+    // member, as repeated dead gossip does.
+    @Benchmark
+    public void addDead() {
+        manager.addDead(nextMember(), incarnation++);
+    }
+
+    @Benchmark
+    public NatedAddress getRandomAliveNode() {
+        return manager.getRandomAliveNode();
+    }
+
+    @Benchmark
+    public Pong getPong() {
+        Pong pong = manager.getPong(addresses[0], pingNr++, 0);
+        refill(pong);
+        return pong;
+    }
+
+    // Baseline of the refill done by getPong.
+    @Benchmark
+    public Pong getPongRefill() {
+        refill(lastPong);
+        return lastPong;
+    }
+}
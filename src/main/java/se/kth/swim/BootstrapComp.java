@@ -18,21 +18,22 @@
  */
 package se.kth.swim;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.kth.swim.msg.Status;
+import se.kth.swim.msg.net.NetStatusAck;
 import se.kth.swim.msg.net.NetStatusMsg;
 import se.sics.kompics.*;
 import se.sics.kompics.network.Address;
 import se.sics.kompics.network.Network;
 import se.sics.kompics.timer.Timer;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
-import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
-import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.SourceHeader;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
@@ -46,7 +47,15 @@ public class BootstrapComp extends ComponentDefinition {
 
     private final NatedAddress selfAddress;
     private static final boolean LOGGING_INFO = false;
-    public static Map<Integer, Map<Address, Status>> stateReport;  //Status report with status number and address who sent the report.
+    private static final int ROUND_WINDOW = 5; //Status numbers kept open for late reports behind the newest one received.
+    private static final int VIEW_HISTORY = 16; //Rebuilt views kept per node as bases for its delta statuses.
+    private static final boolean PARALLEL_EVALUATION = true; //Evaluate closed rounds on a fork-join pool instead of the component thread.
+
+    private static ConvergenceSeries convergenceSeries;  //Rounds of the run, open and evaluated.
+
+    private final ViewHistory recentViews;  //Latest views reported by each node, bases of their delta statuses.
+    private final ForkJoinPool evaluationPool;  //Evaluates the closed rounds of this run, shut down when the component stops.
+    private final Random rand = new Random();
 
     public BootstrapComp(BootstrapInit init) {
         this.selfAddress = init.selfAddress;
@@ -55,7 +64,9 @@ public class BootstrapComp extends ComponentDefinition {
             log.info("{} initiating...", new Object[]{selfAddress.getId()});
         }
 
-        stateReport = new HashMap<Integer, Map<Address, Status>>();
+        evaluationPool = PARALLEL_EVALUATION ? new ForkJoinPool() : null;
+        convergenceSeries = new ConvergenceSeries(ROUND_WINDOW, evaluationPool);
+        recentViews = new ViewHistory(VIEW_HISTORY);
 
         subscribe(handleStart, control);
         subscribe(handleStop, control);
@@ -79,6 +90,10 @@ public class BootstrapComp extends ComponentDefinition {
             if (LOGGING_INFO) {
                 log.info("{} stopping...", new Object[]{selfAddress});
             }
+            //Queued evaluations still run, calculateSystemConvergence waits for them.
+            if (evaluationPool != null) {
+                evaluationPool.shutdown();
+            }
         }
 
     };
@@ -93,83 +108,78 @@ public class BootstrapComp extends ComponentDefinition {
                 log.info("{} status num:{} from:{} received-pings:{} sent-pings:{}, Alive nodes: {}", new Object[]{selfAddress.getId(), status.getContent().statusNr, status.getHeader().getSource(), status.getContent().receivedPings, status.getContent().sentPings, status.getContent().getAliveNodes()});
             }
 
-            Map<Address, Status> statusesFromNode = stateReport.get(status.getContent().getStatusNr());
+            Status content = status.getContent();
+            Address reporter = status.getSource().getBaseAdr();
 
-            if (statusesFromNode == null) {
-                statusesFromNode = new HashMap<Address, Status>();
-                stateReport.put(status.getContent().getStatusNr(), statusesFromNode);
+            //A delta status only lists the changes since a status we acknowledged, rebuild the full view from it.
+            Status view = recentViews.add(reporter, content);
+            if (view == null) {
+                if (LOGGING_INFO) {
+                    log.info("{} dropping delta status num:{} from:{}, base:{} unknown", new Object[]{selfAddress.getId(), content.getStatusNr(), status.getSource(), content.getBaseStatusNr()});
+                }
+                return;
             }
 
-            statusesFromNode.put(status.getSource().getBaseAdr(), status.getContent());
+            convergenceSeries.add(status.getSource().getId(), view);
+
+            sendAck(status.getSource(), view.getStatusNr());
         }
     };
 
-    // Calculation  Of Convergence
+    /**
+     * @return the evaluation of every round closed so far, by status number.
+     */
+    public static SortedMap<Integer, ConvergenceRound.Result> getConvergenceSeries() {
+        return convergenceSeries.getResults();
+    }
+
+    private void sendAck(NatedAddress node, int statusNr) {
+        NetStatusAck ack = new NetStatusAck(selfAddress, node, statusNr);
+        if (node.isOpen()) {
+            trigger(ack, network);
+        }
+        else if (!node.getParents().isEmpty()) {
+            //The aggregator has no nat traversal component of its own, so it relays through a parent itself.
+            NatedAddress parent = randomNode(node.getParents());
+            trigger(ack.copyMessage(new SourceHeader(ack.getHeader(), parent)), network);
+        }
+    }
+
+    private NatedAddress randomNode(Set<NatedAddress> nodes) {
+        int index = rand.nextInt(nodes.size());
+        Iterator<NatedAddress> it = nodes.iterator();
+        while (index > 0) {
+            it.next();
+            index--;
+        }
+        return it.next();
+    }
+
+    // Calculation  Of Convergence: closes the rounds still open and writes the whole series, in status number order.
     public static void calculateSystemConvergence() throws UnsupportedEncodingException {
      
         PrintWriter writer = null;
+        PrintWriter csvWriter = null;
         try {
             writer = new PrintWriter("SystemConvergance.txt", "UTF-8");
+            csvWriter = new PrintWriter("SystemConvergence.csv", "UTF-8");
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         }
 
-        Map<Integer, Double> convergenceByStatusNr = new HashMap<Integer, Double>();
-
-        //Loop through all status numbers 
-        for (int statusNr : stateReport.keySet()) {
-            Map<Address, Status> statusesForNr = stateReport.get(statusNr);
-
-            Set<Address> allAliveNodes = new HashSet<Address>();
-            Set<Address> commonAliveNodes = null;
-            int nrOfDisconnectedNodes = 0;
-            
-            for (Address address : statusesForNr.keySet()) {
-                Status status = statusesForNr.get(address);
-
-                NatedAddress natedAddress = new BasicNatedAddress((BasicAddress) address); //Adding sender node to alive nodes list
-                status.getAliveNodes().put(natedAddress, 0);
-                allAliveNodes.addAll(convertToAddress(status.getAliveNodes().keySet()));   //Add all alive nodes to a set
-
-                if (status.getAliveNodes().isEmpty()) {
-                    nrOfDisconnectedNodes++;
-                    System.out.println("Node num: " + ((BasicAddress) address).getId() + " doesn't have any alive nodes!");
-                }
-                else {
-                    if (commonAliveNodes == null) {
-                        commonAliveNodes = new HashSet<Address>(convertToAddress(status.getAliveNodes().keySet()));
-                    }
-                    else {
-                        commonAliveNodes.retainAll(convertToAddress(status.getAliveNodes().keySet()));
-                    }
-                }
-
-            }
-
-            //The convergence is calculated by dividing common nodes to total nodes in the system.
-            double convergenceRate = Math.max(((double) (commonAliveNodes.size() - nrOfDisconnectedNodes) / (double) Math.max(1, allAliveNodes.size())), 0);
-
-            if (convergenceRate > 1) { 
-                convergenceRate = 1 / convergenceRate;
-            }
-
-            log.info("Number of alive nodes: " + commonAliveNodes.size() + ", Number of alive nodes: " + allAliveNodes.size());
-            convergenceByStatusNr.put(statusNr, convergenceRate);
+        //The run is over, the rounds still open are evaluated right here.
+        SortedMap<Integer, ConvergenceRound.Result> results = convergenceSeries.finish();
+        if (convergenceSeries.getLateReports() > 0) {
+            log.info("Ignored {} status reports received after their round was closed", convergenceSeries.getLateReports());
         }
 
-        for (int statusNr : convergenceByStatusNr.keySet()) {
-            SwimComp.log.info("Convergence at iteration {}: {}", statusNr, convergenceByStatusNr.get(statusNr));
-            writer.println(convergenceByStatusNr.get(statusNr).toString());
+        csvWriter.println(ConvergenceRound.Result.CSV_HEADER);
+        for (ConvergenceRound.Result result : results.values()) {
+            writer.println(Double.toString(result.getConvergence()));
+            csvWriter.println(result.toCsv());
         }
         writer.close();
-    }
-    
-    private static Set<Address> convertToAddress(Set<NatedAddress> nodes) {
-        Set<Address> addresses = new HashSet<Address>();
-        for (NatedAddress node : nodes) {
-            addresses.add(node.getBaseAdr());
-        }
-        return addresses;
+        csvWriter.close();
     }
 
     public static class BootstrapInit extends Init<BootstrapComp> {
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.kth.swim.msg.Bundle;
+import se.kth.swim.msg.Status;
+import se.kth.swim.msg.StatusAck;
+import se.kth.swim.msg.codec.SwimCodec;
+import se.kth.swim.msg.net.NetBundle;
+import se.kth.swim.msg.net.NetMsg;
+import se.kth.swim.timeout.FlushTimeout;
+import se.sics.kompics.*;
+import se.sics.kompics.network.Network;
+import se.sics.kompics.timer.CancelTimeout;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timer;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.*;
+
+/**
+ * Sits between SwimComp and NatTraversalComp and bundles the messages sent to
+ * the same destination within a short window into a single NetBundle, so a
+ * burst of pings, K-indirect pings and alive messages to one node costs one
+ * datagram. Bundles are unpacked on the receiving side before SwimComp sees
+ * them. Statuses and their acknowledgements go to the aggregator unbundled.
+ */
+public class CoalescingComp extends ComponentDefinition {
+
+    private static final Logger log = LoggerFactory.getLogger(CoalescingComp.class);
+    private Negative<Network> local = provides(Network.class);
+    private Positive<Network> network = requires(Network.class);
+    private Positive<Timer> timer = requires(Timer.class);
+
+    private static final int MAX_BUNDLE_SIZE = 1500 - 20 - 8 - 16; //Path MTU minus IP and UDP headers and the bundle header.
+    private static final boolean LOGGING = false;
+
+    private final NatedAddress selfAddress;
+    private final long window;
+    private final Map<Integer, PendingBundle> pending;   //Messages waiting for their window to end, by destination id.
+    private long sentMessages = 0;
+    private long sentDatagrams = 0;
+
+    public CoalescingComp(CoalescingInit init) {
+        this.selfAddress = init.selfAddress;
+        this.window = init.window;
+        this.pending = new HashMap<Integer, PendingBundle>();
+
+        subscribe(handleStop, control);
+        subscribe(handleOutgoingMsg, local);
+        subscribe(handleIncomingMsg, network);
+        subscribe(handleFlushTimeout, timer);
+    }
+
+    private Handler<Stop> handleStop = new Handler<Stop>() {
+
+        @Override
+        public void handle(Stop event) {
+            //Send what is still waiting rather than dropping it with its window.
+            for (PendingBundle bundle : pending.values()) {
+                trigger(new CancelTimeout(bundle.timeoutId), timer);
+                flush(bundle);
+            }
+            pending.clear();
+            if (LOGGING) {
+                log.info("{} sent {} messages in {} datagrams", new Object[]{selfAddress.getId(), sentMessages, sentDatagrams});
+            }
+        }
+
+    };
+
+    private Handler<NetMsg<Object>> handleOutgoingMsg = new Handler<NetMsg<Object>>() {
+
+        @Override
+        public void handle(NetMsg<Object> msg) {
+            if (window <= 0 || msg.getContent() instanceof Status || msg.getContent() instanceof StatusAck) {
+                send(msg);
+                return;
+            }
+
+            //Upper bound from the fields, encoding every message just to measure it would cost more than the datagrams saved.
+            int size = 1 + SwimCodec.maxSizeOfContent(msg.getContent());
+            if (size > MAX_BUNDLE_SIZE) {
+                send(msg);
+                return;
+            }
+
+            int destinationId = msg.getHeader().getDestination().getId();
+            PendingBundle bundle = pending.get(destinationId);
+            if (bundle != null && bundle.size + size > MAX_BUNDLE_SIZE) {
+                //Full, send what is waiting and open a new window for this message.
+                pending.remove(destinationId);
+                trigger(new CancelTimeout(bundle.timeoutId), timer);
+                flush(bundle);
+                bundle = null;
+            }
+            if (bundle == null) {
+                ScheduleTimeout spt = new ScheduleTimeout(window);
+                FlushTimeout ft = new FlushTimeout(spt, destinationId);
+                spt.setTimeoutEvent(ft);
+                trigger(spt, timer);
+
+                bundle = new PendingBundle(msg.getHeader().getSource(), msg.getHeader().getDestination(), ft.getTimeoutId());
+                pending.put(destinationId, bundle);
+            }
+            bundle.messages.add(msg);
+            bundle.size += size;
+        }
+
+    };
+
+    private Handler<FlushTimeout> handleFlushTimeout = new Handler<FlushTimeout>() {
+
+        @Override
+        public void handle(FlushTimeout event) {
+            PendingBundle bundle = pending.get(event.getDestinationId());
+            //A bundle flushed for being full leaves a cancelled timeout that may still fire.
+            if (bundle != null && bundle.timeoutId.equals(event.getTimeoutId())) {
+                pending.remove(event.getDestinationId());
+                flush(bundle);
+            }
+        }
+
+    };
+
+    private Handler<NetMsg<Object>> handleIncomingMsg = new Handler<NetMsg<Object>>() {
+
+        @Override
+        public void handle(NetMsg<Object> msg) {
+            if (msg.getContent() instanceof Bundle) {
+                for (NetMsg inner : ((Bundle) msg.getContent()).getMessages()) {
+                    trigger(inner, local);
+                }
+            }
+            else {
+                trigger(msg, local);
+            }
+        }
+
+    };
+
+    private void flush(PendingBundle bundle) {
+        if (bundle.messages.size() == 1) {
+            send(bundle.messages.get(0));
+            return;
+        }
+        if (LOGGING) {
+            log.info("{} bundling {} messages to {}", new Object[]{selfAddress.getId(), bundle.messages.size(), bundle.destination.getId()});
+        }
+        sentMessages += bundle.messages.size() - 1;
+        send(new NetBundle(bundle.source, bundle.destination, bundle.messages));
+    }
+
+    private void send(NetMsg msg) {
+        sentMessages++;
+        sentDatagrams++;
+        trigger(msg, network);
+    }
+
+    private static class PendingBundle {
+
+        private final NatedAddress source;
+        private final NatedAddress destination;
+        private final UUID timeoutId;
+        private final List<NetMsg> messages = new ArrayList<NetMsg>();
+        private int size = 0;
+
+        PendingBundle(NatedAddress source, NatedAddress destination, UUID timeoutId) {
+            this.source = source;
+            this.destination = destination;
+            this.timeoutId = timeoutId;
+        }
+    }
+
+    public static class CoalescingInit extends Init<CoalescingComp> {
+
+        public final NatedAddress selfAddress;
+        public final long window;
+
+        public CoalescingInit(NatedAddress selfAddress, long window) {
+            this.selfAddress = selfAddress;
+            this.window = window;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import java.util.BitSet;
+import java.util.Map;
+import se.kth.swim.msg.Status;
+import se.kth.swim.util.IntIntMap;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Convergence accumulator of one status number. Every report is folded into the
+ * union and the intersection of the alive views as it arrives, so the reports
+ * themselves are not kept. Views are bitmaps over dense node indexes, shared by
+ * all rounds, so unions and intersections are word-wide OR and AND.
+ */
+public class ConvergenceRound {
+
+    private final int statusNr;
+    private final IntIntMap nodeIndexes;  //Node id to dense bit index, shared by all rounds.
+    private final BitSet reporters = new BitSet();
+    private final BitSet allAliveNodes = new BitSet();
+    private final BitSet deadNodes = new BitSet();  //Nodes declared dead by at least one reporter.
+    private BitSet commonAliveNodes = null;
+
+    public ConvergenceRound(int statusNr, IntIntMap nodeIndexes) {
+        this.statusNr = statusNr;
+        this.nodeIndexes = nodeIndexes;
+    }
+
+    // The reporter always counts itself as alive.
+    public void add(int reporterId, Status status) {
+        int reporter = indexOf(reporterId);
+        BitSet view = toBitmap(status.getAliveNodes());
+        view.set(reporter);
+
+        reporters.set(reporter);
+        allAliveNodes.or(view);
+        deadNodes.or(toBitmap(status.getDeadNodes()));
+        if (commonAliveNodes == null) {
+            commonAliveNodes = view;
+        }
+        else {
+            commonAliveNodes.and(view);
+        }
+    }
+
+    private BitSet toBitmap(Map<NatedAddress, Integer> nodes) {
+        BitSet bitmap = new BitSet(nodeIndexes.size());
+        for (NatedAddress node : nodes.keySet()) {
+            bitmap.set(indexOf(node.getId()));
+        }
+        return bitmap;
+    }
+
+    private int indexOf(int id) {
+        int index = nodeIndexes.get(id, -1);
+        if (index < 0) {
+            index = nodeIndexes.size();
+            nodeIndexes.put(id, index);
+        }
+        return index;
+    }
+
+    public int getStatusNr() {
+        return statusNr;
+    }
+
+    public int getReports() {
+        return reporters.cardinality();
+    }
+
+    public int getCommonAliveNodes() {
+        return commonAliveNodes == null ? 0 : commonAliveNodes.cardinality();
+    }
+
+    public int getAllAliveNodes() {
+        return allAliveNodes.cardinality();
+    }
+
+    /**
+     * @return nodes still listed alive by some reporter while another one already declared them dead.
+     */
+    public int getMissedDeaths() {
+        BitSet missed = (BitSet) allAliveNodes.clone();
+        missed.and(deadNodes);
+        return missed.cardinality();
+    }
+
+    /**
+     * @return nodes declared dead by some reporter although they reported themselves in this round.
+     */
+    public int getFalsePositives() {
+        BitSet wrong = (BitSet) reporters.clone();
+        wrong.and(deadNodes);
+        return wrong.cardinality();
+    }
+
+    //The convergence is calculated by dividing common nodes to total nodes in the system.
+    public double getConvergence() {
+        return (double) getCommonAliveNodes() / (double) Math.max(1, getAllAliveNodes());
+    }
+
+    /**
+     * Evaluates the round once it stopped accepting reports. Only reads the
+     * bitmaps, so closed rounds can be evaluated on any thread.
+     */
+    public Result evaluate() {
+        return new Result(statusNr, getReports(), getCommonAliveNodes(), getAllAliveNodes(), getMissedDeaths(), getFalsePositives());
+    }
+
+    public static class Result {
+
+        public static final String CSV_HEADER = "statusNr,reports,commonAliveNodes,allAliveNodes,convergence,missedDeaths,falsePositives";
+
+        public final int statusNr;
+        public final int reports;
+        public final int commonAliveNodes;
+        public final int allAliveNodes;
+        public final int missedDeaths;
+        public final int falsePositives;
+
+        public Result(int statusNr, int reports, int commonAliveNodes, int allAliveNodes, int missedDeaths, int falsePositives) {
+            this.statusNr = statusNr;
+            this.reports = reports;
+            this.commonAliveNodes = commonAliveNodes;
+            this.allAliveNodes = allAliveNodes;
+            this.missedDeaths = missedDeaths;
+            this.falsePositives = falsePositives;
+        }
+
+        public double getConvergence() {
+            return (double) commonAliveNodes / (double) Math.max(1, allAliveNodes);
+        }
+
+        public String toCsv() {
+            return statusNr + "," + reports + "," + commonAliveNodes + "," + allAliveNodes + "," + getConvergence() + "," + missedDeaths + "," + falsePositives;
+        }
+    }
+}
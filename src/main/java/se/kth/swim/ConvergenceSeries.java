@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.kth.swim.msg.Status;
+import se.kth.swim.util.IntIntMap;
+
+/**
+ * Convergence rounds of a run, one per status number. A round accepts reports
+ * while its status number is within the window behind the newest one received,
+ * and is evaluated once it falls out of it. A report for a round already
+ * closed is counted as late and ignored.
+ */
+public class ConvergenceSeries {
+
+    private static final Logger log = LoggerFactory.getLogger(ConvergenceSeries.class);
+
+    private final int window;
+    private final ForkJoinPool evaluationPool;  //Evaluates the closed rounds, null to evaluate them on the reporting thread.
+    private final IntIntMap nodeIndexes = new IntIntMap();  //Dense bit index of every node id seen in a report.
+    private final Map<Integer, ConvergenceRound> openRounds = new TreeMap<Integer, ConvergenceRound>();  //Rounds still accepting reports, by status number.
+    private final SortedMap<Integer, ConvergenceRound.Result> results = new ConcurrentSkipListMap<Integer, ConvergenceRound.Result>();
+    private final List<ForkJoinTask<?>> pendingEvaluations = new ArrayList<ForkJoinTask<?>>();
+    private int newestStatusNr = Integer.MIN_VALUE;
+    private int lateReports = 0;
+
+    /**
+     * @param window status numbers kept open for late reports behind the newest one received.
+     * @param evaluationPool pool the closed rounds are evaluated on, null to evaluate them in place.
+     */
+    public ConvergenceSeries(int window, ForkJoinPool evaluationPool) {
+        this.window = window;
+        this.evaluationPool = evaluationPool;
+    }
+
+    //Folds the report into its round, and closes the rounds that fell out of the window.
+    public void add(int reporterId, Status view) {
+        int statusNr = view.getStatusNr();
+        ConvergenceRound round = openRounds.get(statusNr);
+        if (round == null) {
+            //In long, the window behind the initial Integer.MIN_VALUE would wrap around.
+            if (statusNr < (long) newestStatusNr - window) {
+                lateReports++;
+                return;
+            }
+            round = new ConvergenceRound(statusNr, nodeIndexes);
+            openRounds.put(statusNr, round);
+        }
+        round.add(reporterId, view);
+
+        if (statusNr > newestStatusNr) {
+            newestStatusNr = statusNr;
+            Iterator<ConvergenceRound> it = openRounds.values().iterator();
+            while (it.hasNext()) {
+                ConvergenceRound oldest = it.next();
+                if (oldest.getStatusNr() >= newestStatusNr - window) {
+                    break;
+                }
+                it.remove();
+                close(oldest);
+            }
+        }
+    }
+
+    private void close(final ConvergenceRound round) {
+        if (evaluationPool == null || evaluationPool.isShutdown()) {
+            record(round.evaluate());
+            return;
+        }
+
+        //Rounds are independent once closed, drop the finished evaluations and queue this one.
+        Iterator<ForkJoinTask<?>> it = pendingEvaluations.iterator();
+        while (it.hasNext()) {
+            if (it.next().isDone()) {
+                it.remove();
+            }
+        }
+        pendingEvaluations.add(evaluationPool.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                record(round.evaluate());
+            }
+
+        }));
+    }
+
+    private void record(ConvergenceRound.Result result) {
+        results.put(result.statusNr, result);
+        log.info("Number of alive nodes: " + result.commonAliveNodes + ", Number of alive nodes: " + result.allAliveNodes
+                + ", Missed deaths: " + result.missedDeaths + ", False positives: " + result.falsePositives);
+        SwimComp.log.info("Convergence at iteration {}: {}", result.statusNr, result.getConvergence());
+    }
+
+    /**
+     * The run is over: evaluates the rounds still open right here and waits
+     * for the queued evaluations.
+     *
+     * @return the evaluation of every round, by status number.
+     */
+    public SortedMap<Integer, ConvergenceRound.Result> finish() {
+        for (ConvergenceRound round : openRounds.values()) {
+            record(round.evaluate());
+        }
+        openRounds.clear();
+        for (ForkJoinTask<?> evaluation : pendingEvaluations) {
+            evaluation.join();
+        }
+        pendingEvaluations.clear();
+        return getResults();
+    }
+
+    /**
+     * @return the evaluation of every round closed so far, by status number.
+     */
+    public SortedMap<Integer, ConvergenceRound.Result> getResults() {
+        return Collections.unmodifiableSortedMap(results);
+    }
+
+    public int getOpenRounds() {
+        return openRounds.size();
+    }
+
+    public int getLateReports() {
+        return lateReports;
+    }
+}
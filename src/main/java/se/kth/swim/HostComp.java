@@ -25,6 +25,7 @@ import se.kth.swim.croupier.CroupierComp;
 import se.kth.swim.croupier.CroupierConfig;
 import se.kth.swim.croupier.CroupierPort;
 import se.kth.swim.croupier.util.OverlayFilter;
+import se.kth.swim.msg.control.SwimControlPort;
 import se.kth.swim.msg.parent.ParentPort;
 import se.sics.kompics.*;
 import se.sics.kompics.network.Network;
@@ -33,8 +34,10 @@ import se.sics.p2ptoolbox.util.network.NatedAddress;
 
 import java.util.ArrayList;
 import java.util.Set;
+import se.kth.swim.CoalescingComp.CoalescingInit;
 import se.kth.swim.NatTraversalComp.NatTraversalInit;
 import se.kth.swim.SwimComp.SwimInit;
+import se.kth.swim.TimerWheelComp.TimerWheelInit;
 
 /**
  * @author Alex Ormenisan <aaor@sics.se>
@@ -44,12 +47,17 @@ public class HostComp extends ComponentDefinition {
     private static final Logger log = LoggerFactory.getLogger(HostComp.class);
     private Positive<Network> network = requires(Network.class);
     private Positive<Timer> timer = requires(Timer.class);
+    private Negative<SwimControlPort> swimControl = provides(SwimControlPort.class);
 
     private final NatedAddress selfAddress;
     private Component swim;
     private Component nat;
+    private Component coalescing;
+    private Component timerWheel;
     private Component croupier;
     private static final boolean LOGGING_GIVEN = false;
+    private static final long TIMER_TICK = 50; //Resolution of the timeouts of SWIM, NAT traversal and Croupier, in milliseconds.
+    private static final int TIMER_WHEEL_SIZE = 256; //Ticks in one turn of the timer wheel.
 
     public HostComp(HostInit init) {
         this.selfAddress = init.selfAddress;
@@ -61,13 +69,17 @@ public class HostComp extends ComponentDefinition {
         subscribe(handleStart, control);
         subscribe(handleStop, control);
 
+        //One periodic timeout of the shared timer turns the wheel holding the timeouts of the components below.
+        timerWheel = create(TimerWheelComp.class, new TimerWheelInit(TIMER_TICK, TIMER_WHEEL_SIZE));
+        connect(timerWheel.getNegative(Timer.class), timer);
+
         int overlayId = 1; //so far we don' start multiple croupier overlay
         croupier = create(CroupierComp.class, new CroupierComp.CroupierInit(selfAddress, new ArrayList<NatedAddress>(init.bootstrapNodes), init.seed, init.croupierConfig, overlayId));
-        connect(croupier.getNegative(Timer.class), timer);
+        connect(croupier.getNegative(Timer.class), timerWheel.getPositive(Timer.class));
         connect(croupier.getNegative(Network.class), network, new OverlayFilter(overlayId));
 
         nat = create(NatTraversalComp.class, new NatTraversalInit(selfAddress, init.seed));
-        connect(nat.getNegative(Timer.class), timer);
+        connect(nat.getNegative(Timer.class), timerWheel.getPositive(Timer.class));
         connect(nat.getNegative(Network.class), network);
         connect(nat.getNegative(CroupierPort.class), croupier.getPositive(CroupierPort.class));
         
@@ -76,10 +88,16 @@ public class HostComp extends ComponentDefinition {
         connect(nat.getNegative(Timer.class), timer, Channel.TWO_WAY);
         connect(nat.getNegative(CroupierPort.class), croupier.getPositive(CroupierPort.class), Channel.TWO_WAY);*/
 
-        swim = create(SwimComp.class, new SwimInit(selfAddress, init.bootstrapNodes, init.aggregatorAddress, init.seed));
-        connect(swim.getNegative(Timer.class), timer);
-        connect(swim.getNegative(Network.class), nat.getPositive(Network.class));
+        //Bundling windows are a few milliseconds, shorter than a tick of the wheel.
+        coalescing = create(CoalescingComp.class, new CoalescingInit(selfAddress, init.swimConfig.coalesceWindow));
+        connect(coalescing.getNegative(Timer.class), timer);
+        connect(coalescing.getNegative(Network.class), nat.getPositive(Network.class));
+
+        swim = create(SwimComp.class, new SwimInit(selfAddress, init.bootstrapNodes, init.aggregatorAddress, init.seed, init.swimConfig));
+        connect(swim.getNegative(Timer.class), timerWheel.getPositive(Timer.class));
+        connect(swim.getNegative(Network.class), coalescing.getPositive(Network.class));
         connect(swim.getNegative(ParentPort.class), nat.getPositive(ParentPort.class));
+        connect(swimControl, swim.getPositive(SwimControlPort.class));
         
          /* swim = create(SwimComp.class, new SwimComp.SwimInit(selfAddress, init.bootstrapNodes));
         connect(swim.getNegative(Timer.class), timer, Channel.TWO_WAY);
@@ -114,6 +132,7 @@ public class HostComp extends ComponentDefinition {
         public final NatedAddress aggregatorAddress;
         public final long seed;
         public final CroupierConfig croupierConfig;
+        public final SwimConfig swimConfig;
         
          /*public HostInit(NatedAddress selfAddress, List<NatedAddress> bootstrapNodes, long seed, CroupierConfig croupierConfig) {
             this.selfAddress = selfAddress;
@@ -123,11 +142,16 @@ public class HostComp extends ComponentDefinition {
         }*/
 
         public HostInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, long seed, CroupierConfig croupierConfig) {
+            this(selfAddress, bootstrapNodes, aggregatorAddress, seed, croupierConfig, new SwimConfig());
+        }
+
+        public HostInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, long seed, CroupierConfig croupierConfig, SwimConfig swimConfig) {
             this.selfAddress = selfAddress;
             this.bootstrapNodes = bootstrapNodes;
             this.aggregatorAddress = aggregatorAddress;
             this.seed = seed;
             this.croupierConfig = croupierConfig;
+            this.swimConfig = swimConfig;
         }
     }
 }
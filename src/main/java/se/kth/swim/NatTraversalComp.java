@@ -22,12 +22,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.kth.swim.croupier.CroupierPort;
 import se.kth.swim.croupier.msg.CroupierSample;
+import se.kth.swim.croupier.msg.CroupierUpdate;
 import se.kth.swim.croupier.util.Container;
+import se.kth.swim.msg.RelayLoad;
 import se.kth.swim.msg.net.NetMsg;
 import se.kth.swim.msg.net.NetNATedPing;
 import se.kth.swim.msg.net.NetNATedPong;
 import se.kth.swim.msg.parent.NewParentNotification;
 import se.kth.swim.msg.parent.ParentPort;
+import se.kth.swim.node.RelayQuota;
+import se.kth.swim.node.RelaySelector;
 //import se.kth.swim.simulation.SwimScenario;
 import se.kth.swim.timeout.HeartbeatTimeout;
 import se.kth.swim.timeout.NATedPingTimeout;
@@ -35,6 +39,7 @@ import se.sics.kompics.*;
 import se.sics.kompics.network.Address;
 import se.sics.kompics.network.Header;
 import se.sics.kompics.network.Network;
+import se.sics.kompics.timer.CancelTimeout;
 import se.sics.kompics.timer.SchedulePeriodicTimeout;
 import se.sics.kompics.timer.ScheduleTimeout;
 import se.sics.kompics.timer.Timer;
@@ -61,10 +66,22 @@ public class NatTraversalComp extends ComponentDefinition {
     private final Random rand;
     private static final int HEARTBEAT_TIMEOUT = 500;   
     private static final int PING_TIMEOUT = 500;     
+    private static final int MAX_CHILDREN = 16;         //Children an open node relays for before advertising itself as saturated
+    private static final int RELAY_RATE = 100;          //Messages per second relayed to each child
+    private static final int RELAY_BURST = 50;          //Messages relayed to a child at once after it was quiet
+    private static final int CHILD_TIMEOUT = 3 * HEARTBEAT_TIMEOUT;   //Children not heard from for this long are forgotten
     private int sentPings;                              //Number of Pings sent
-    private Set<Integer> pingedParents;                 //Parents pinged which have not sent a pong sofar
+    private Map<Integer, HeartbeatPing> pingedParents;  //Pings to parents which have not sent a pong sofar
+    private RelaySelector relays;                       //Chooses the parent relaying each message to a NATed node
+    private long firedTimeouts = 0;                     //Heartbeat pings that timed out
+    private long cancelledTimeouts = 0;                 //Heartbeat ping timeouts cancelled by a pong
     private Set<NatedAddress> latestParentSample;       //Sample received from croupier about parents
     private Set<Address> deadParents;                  
+    private RelayQuota relayQuota;                      //Limits the messages relayed to each child and decides the relay load
+    private RelayLoad advertisedLoad;                   //Load last given to croupier as self view
+    private long lastRelayed = 0;                       //Relay totals at the previous heartbeat, for the rates
+    private long lastDropped = 0;
+    private Set<Address> saturatedNodes;                //Open nodes of the latest sample advertising a saturated relay load
     public static int nrBootstrap;
     
     private static final boolean GIVEN_LOGGING = false;
@@ -79,9 +96,12 @@ public class NatTraversalComp extends ComponentDefinition {
 
         this.rand = new Random(init.seed);
 
-        this.pingedParents = new HashSet<Integer>();
+        this.pingedParents = new HashMap<Integer, HeartbeatPing>();
+        this.relays = new RelaySelector(rand);
         this.deadParents = new HashSet<Address>();
         this.latestParentSample = new HashSet<NatedAddress>();
+        this.relayQuota = new RelayQuota(RELAY_RATE, RELAY_BURST, MAX_CHILDREN);
+        this.saturatedNodes = new HashSet<Address>();
         subscribe(handleStart, control);
         subscribe(handleStop, control);
         subscribe(handleIncomingMsg, network);
@@ -129,6 +149,12 @@ public class NatTraversalComp extends ComponentDefinition {
                 }
                 SourceHeader<NatedAddress> sourceHeader = (SourceHeader<NatedAddress>) header;
                 if (sourceHeader.getActualDestination().getParents().contains(selfAddress)) {
+                    if (!relayQuota.tryRelay(sourceHeader.getActualDestination().getId(), System.currentTimeMillis())) {
+                        if (GIVEN_LOGGING) {
+                            log.info("{} relay quota of:{} used up - dropping message:{}", new Object[]{selfAddress.getId(), sourceHeader.getActualDestination(), msg});
+                        }
+                        return;
+                    }
                     if (GIVEN_LOGGING) {
                         log.info("{} relaying message for:{}", new Object[]{selfAddress.getId(), sourceHeader.getSource()});
                     }
@@ -185,7 +211,8 @@ public class NatTraversalComp extends ComponentDefinition {
                 if (header.getDestination().getParents().isEmpty()) {
                     throw new RuntimeException("nated node with no parents in node " + selfAddress + ". The orphan is " + header.getDestination());
                 }
-                NatedAddress parent = randomNode(header.getDestination().getParents());
+                NatedAddress parent = relays.select(header.getDestination());
+                relays.routed(parent);
                 SourceHeader<NatedAddress> sourceHeader = new SourceHeader(header, parent);
                 if (GIVEN_LOGGING) {
                     log.info("{} sending message:{} to relay:{}", new Object[]{selfAddress.getId(), msg, parent});
@@ -202,16 +229,27 @@ public class NatTraversalComp extends ComponentDefinition {
         @Override
         public void handle(CroupierSample event) {
             latestParentSample.clear();
+            saturatedNodes.clear();
 
             if (GIVEN_LOGGING) {
                 log.info("{} croupier public nodes:{}", selfAddress.getBaseAdr(), event.publicSample);
             }
 
+            //Every node relays through the parents of NATed nodes, so every node ranks them by the load they advertise.
+            Set<Container<NatedAddress, Object>> publicSample = new HashSet<Container<NatedAddress, Object>>(event.publicSample);
+            for (Container<NatedAddress, Object> container : publicSample) {
+                if (container.getContent() instanceof RelayLoad) {
+                    relays.advertised(container.getSource(), (RelayLoad) container.getContent());
+                }
+            }
+
             if (!selfAddress.isOpen()) {
                 //use this to change parent in case it died
-                Set<Container<NatedAddress, Object>> publicSample = new HashSet<Container<NatedAddress, Object>>(event.publicSample);
                 for (Container<NatedAddress, Object> container : publicSample) {
                     latestParentSample.add(container.getSource()); 
+                    if (container.getContent() instanceof RelayLoad && ((RelayLoad) container.getContent()).isSaturated()) {
+                        saturatedNodes.add(container.getSource().getBaseAdr());
+                    }
                 }
                 if (LOGGING_NEW) {
                     if (latestParentSample.size() == 0) {
@@ -223,12 +261,12 @@ public class NatTraversalComp extends ComponentDefinition {
         }
     };
 
-   //Updating parents if old parent has died.
+   //Updating parents if old parent has died. Saturated relays are kept as parents but never picked as new ones.
     private void sendNewParents(Set<NatedAddress> inputPeers) {
         Set<NatedAddress> samplePeers = new HashSet<NatedAddress>();
         //Identify dead parents from alive parents
         for (NatedAddress node : inputPeers) { 
-            if (!deadParents.contains(node.getBaseAdr())) {
+            if (!deadParents.contains(node.getBaseAdr()) && !saturatedNodes.contains(node.getBaseAdr())) {
                 samplePeers.add(node);
             }
         }
@@ -282,6 +320,7 @@ public class NatTraversalComp extends ComponentDefinition {
                 log.info("Answering hearbeat from " + netNatPing.getSource() + ". I'm node " + selfAddress);
             }
 
+            relayQuota.heardFrom(netNatPing.getSource().getId(), System.currentTimeMillis());
             trigger(new NetNATedPong(selfAddress, netNatPing.getSource(), netNatPing.getContent().getPingNr()), network);
         }
     };
@@ -294,7 +333,12 @@ public class NatTraversalComp extends ComponentDefinition {
                 log.info("Received a NatPong from " + netNatPong.getSource() + ". I'm node " + selfAddress);
             }
 
-            pingedParents.remove(netNatPong.getContent().getPingNr());
+            HeartbeatPing ping = pingedParents.remove(netNatPong.getContent().getPingNr());
+            if (ping != null) {
+                trigger(new CancelTimeout(ping.timeoutId), timer);
+                cancelledTimeouts++;
+                relays.pongReceived(netNatPong.getSource(), System.currentTimeMillis() - ping.sentAt);
+            }
         }
     };
 
@@ -302,6 +346,7 @@ public class NatTraversalComp extends ComponentDefinition {
     private Handler<HeartbeatTimeout> handleHeartbeatTimeout = new Handler<HeartbeatTimeout>() {
         @Override
         public void handle(HeartbeatTimeout heartbeatTimeout) {
+            relays.decay();
 
             for (NatedAddress address : selfAddress.getParents()) {
                 if (LOGGING_NEW) {
@@ -310,27 +355,58 @@ public class NatTraversalComp extends ComponentDefinition {
 
                 trigger(new NetNATedPing(selfAddress, address, sentPings), network);
 
-                pingedParents.add(sentPings);
                 ScheduleTimeout spt = new ScheduleTimeout(PING_TIMEOUT);
                 NATedPingTimeout sc = new NATedPingTimeout(spt, address, sentPings);
+                pingedParents.put(sentPings, new HeartbeatPing(sc.getTimeoutId(), System.currentTimeMillis()));
+                relays.pingSent(address);
                 sentPings++;
                 spt.setTimeoutEvent(sc);
                 trigger(spt, timer);
             }
+
+            if (LOGGING_NEW) {
+                log.info("{} heartbeat timeouts fired:{} cancelled:{}", new Object[]{selfAddress.getId(), firedTimeouts, cancelledTimeouts});
+            }
+
+            if (selfAddress.isOpen()) {
+                updateRelayLoad();
+            }
         }
     };
 
+    //Forgets the children that stopped sending heartbeats, reports the relay rates and advertises the load to croupier when it changed.
+    private void updateRelayLoad() {
+        relayQuota.forgetIdle(System.currentTimeMillis() - CHILD_TIMEOUT);
+        RelayLoad load = relayQuota.updateLoad();
+
+        if (LOGGING_NEW) {
+            double seconds = HEARTBEAT_TIMEOUT / 1000.0;
+            log.info("{} relaying for children:{} msgs/s:{} drops:{} load:{}", new Object[]{selfAddress.getId(), load.getChildren(),
+                (relayQuota.getRelayed() - lastRelayed) / seconds, relayQuota.getDropped() - lastDropped, load});
+        }
+        lastRelayed = relayQuota.getRelayed();
+        lastDropped = relayQuota.getDropped();
+
+        //Nodes relaying through us rank their relays by the children count too, so it is kept current.
+        if (advertisedLoad == null || advertisedLoad.isSaturated() != load.isSaturated() || advertisedLoad.getChildren() != load.getChildren()) {
+            advertisedLoad = load;
+            trigger(new CroupierUpdate.View<RelayLoad>(load), croupier);
+        }
+    }
+
     //Handler for timeout pings in and nodes which are still in the pingedParents Set  are declared dead.
     private Handler<NATedPingTimeout> handlePingTimeout = new Handler<NATedPingTimeout>() {
         @Override
         public void handle(NATedPingTimeout natPingTimeout) {
-            if (pingedParents.contains(natPingTimeout.getPingNr())) {
+            firedTimeouts++;
+            if (pingedParents.containsKey(natPingTimeout.getPingNr())) {
                 if (LOGGING_NEW) {
                     log.info("Declaring node " + natPingTimeout.getAddress() + " dead. I'm node " + selfAddress);
                 }
 
                 deadParents.add(natPingTimeout.getAddress().getBaseAdr());
                 pingedParents.remove(natPingTimeout.getPingNr());
+                relays.pingTimedOut(natPingTimeout.getAddress());
                 sendNewParents(latestParentSample);
             }
         }
@@ -344,17 +420,17 @@ public class NatTraversalComp extends ComponentDefinition {
         trigger(spt, timer);
     }
 
-    //Returns a random node from the available nodes
-    private NatedAddress randomNode(Set<NatedAddress> nodes) {
-        int index = rand.nextInt(nodes.size());
-        Iterator<NatedAddress> it = nodes.iterator();
-        while (index > 0) {
-            it.next();
-            index--;
+    private static class HeartbeatPing {
+
+        private final UUID timeoutId;
+        private final long sentAt;
+
+        HeartbeatPing(UUID timeoutId, long sentAt) {
+            this.timeoutId = timeoutId;
+            this.sentAt = sentAt;
         }
-        return it.next();
     }
-    
+
     public static class NatTraversalInit extends Init<NatTraversalComp> {
 
         public final NatedAddress selfAddress;
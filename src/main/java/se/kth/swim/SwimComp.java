@@ -22,11 +22,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.kth.swim.msg.Pong;
 import se.kth.swim.msg.Status;
+import se.kth.swim.msg.control.SwimConfigUpdate;
+import se.kth.swim.msg.control.SwimControlPort;
 import se.kth.swim.msg.net.*;
 import se.kth.swim.msg.parent.NewParentNotification;
 import se.kth.swim.msg.parent.ParentPort;
+import se.kth.swim.node.LocalHealth;
 import se.kth.swim.node.NodeManager;
+import se.kth.swim.node.PendingPings;
+import se.kth.swim.node.RelayTable;
+import se.kth.swim.node.RttEstimator;
+import se.kth.swim.node.Suspicion;
+import se.kth.swim.node.SuspicionTable;
 import se.kth.swim.timeout.*;
+import se.kth.swim.util.IntObjectMap;
 import se.sics.kompics.*;
 import se.sics.kompics.network.Network;
 import se.sics.kompics.timer.CancelTimeout;
@@ -44,32 +53,26 @@ import java.util.*;
 public class SwimComp extends ComponentDefinition {
 
    
-    private static final int K_INDIRECT = 4; //Number of nodes used for indirect K-ping request
-    public static final int PIGGYBACK_MESSAGE_SIZE = 10000000; //Piggybacked message size in each pong.
-    public static final int LAMBDA = 3; //Number of times the node status change is piggybacked. Lambda * log(n)
-    
-    
-    //Settings for Analysis of Convergence by Limiting Mesage size and Lamda
-    //public static final int PIGGYBACK_MESSAGE_SIZE = 6; 
-    //public static final int LAMBDA = 3; 
-    
-    
-    private static final int PING_TIMEOUT = 2000; 
-    private static final int SUSPECTED_TIMEOUT = 2000; //Timeout for declaring it suspected
-    private static final int DEAD_TIMEOUT = 2000; //Timeout for declaring it dead
-    private static final int AGGREGATOR_TIMEOUT = 1000; //Latency for sending info to aggregator
+    private static final int MAX_RELAYS = 1024; //Maximum number of K-indirect pings relayed at once.
+    private static final int RELAY_SWEEP_PERIOD = 1000; //Period of removing expired relayed pings.
+    private static final double NACK_TIMEOUT_RATIO = 0.8; //Share of the suspected timeout a K-ping helper waits before sending a nack.
+    private static final boolean DELTA_STATUS = true; //Send only the membership changes since the last acknowledged status to the aggregator.
+    private static final int FULL_STATUS_PERIOD = 10; //Every FULL_STATUS_PERIOD statuses a full snapshot is sent so the aggregator can resynchronise.
     private static final boolean LOGGING_GIVEN = true;
 
     public static final Logger log = LoggerFactory.getLogger(SwimComp.class);
     private Positive<Network> network = requires(Network.class);
     private Positive<Timer> timer = requires(Timer.class);
     private Positive<ParentPort> parentPort = requires(ParentPort.class);
+    private Negative<SwimControlPort> swimControlPort = provides(SwimControlPort.class);
 
     private final NatedAddress selfAddress;
     private final NatedAddress aggregatorAddress;
+    private SwimConfig config;
 
-    private UUID pingTimeoutId;
+    private UUID pingTimeoutId;    //Next probe, scheduled one period at a time so the period follows the local health.
     private UUID statusTimeoutId;
+    private UUID relaySweepTimeoutId;
 
     private Random rand;
 
@@ -78,11 +81,16 @@ public class SwimComp extends ComponentDefinition {
     private int receivedPings = 0;
     private int incarnationCounter = 0;
     private int sentStatuses = 0;
+    private long firedTimeouts = 0;    //Probe, K-ping and dead timeouts that fired.
+    private long cancelledTimeouts = 0;    //Probe, K-ping and dead timeouts cancelled before firing, their node answered.
 
     private NodeManager nodeHandler;    //NodeHandler holds all info about nodes in the system
-    private List<Integer> sentPingNrs;
-    private Map<Integer, NatedAddress> sentIndirectPings;
-    private Map<Integer, Integer> kPingNrToPingNrMapping;
+    private PendingPings pendingPings;    //Pings waiting for a pong, with their target and send time.
+    private RelayTable relays;    //Pings sent on behalf of K-indirect ping requesters.
+    private LocalHealth localHealth;    //Lifeguard local health, stretches probe periods and timeouts while this node is slow.
+    private SuspicionTable suspicions;    //Suspected nodes, by node id, each with one dead timeout scheduled.
+    private RttEstimator rtt;    //Round trip times of all pongs.
+    private IntObjectMap<RttEstimator> peerRtts;    //Round trip times of the pongs of each node, by node id.
 
     public SwimComp(SwimInit init) {
         if (LOGGING_GIVEN) {
@@ -91,14 +99,18 @@ public class SwimComp extends ComponentDefinition {
 
         selfAddress = init.selfAddress;
         aggregatorAddress = init.aggregatorAddress;
+        config = init.config;
 
         this.rand = new Random(init.seed);
 
-        nodeHandler = new NodeManager(selfAddress, init.seed);
+        nodeHandler = new NodeManager(selfAddress, init.seed, config);
 
-        sentPingNrs = new ArrayList<Integer>();
-        sentIndirectPings = new HashMap<Integer, NatedAddress>();
-        kPingNrToPingNrMapping = new HashMap<Integer, Integer>();
+        pendingPings = new PendingPings();
+        relays = new RelayTable(MAX_RELAYS, relayTimeToLive());
+        localHealth = new LocalHealth(config.maxLocalHealth);
+        suspicions = new SuspicionTable(pendingPings);
+        rtt = new RttEstimator();
+        peerRtts = new IntObjectMap<RttEstimator>();
 
         // Adding all bootstrap nodes to alive nodes list.
         for (NatedAddress address : init.bootstrapNodes) {
@@ -111,17 +123,22 @@ public class SwimComp extends ComponentDefinition {
 
         subscribe(handleStart, control);
         subscribe(handleStop, control);
+        subscribe(handleConfigUpdate, swimControlPort);
         subscribe(handlePing, network);
         subscribe(handlePong, network);
         subscribe(handleAlive, network);
         subscribe(handleNetKPing, network);
         subscribe(handleNetKPong, network);
+        subscribe(handleNetKNack, network);
+        subscribe(handleStatusAck, network);
         subscribe(handleNewParent, parentPort);
         subscribe(handlePingTimeout, timer);
         subscribe(handleStatusTimeout, timer);
         subscribe(handlePongTimeout, timer);
         subscribe(handleSuspectedTimeout, timer);
         subscribe(handleDeadTimeout, timer);
+        subscribe(handleNackTimeout, timer);
+        subscribe(handleRelaySweepTimeout, timer);
     }
 
     //  Starting  SWIM Component and scheduling periodic pings and status messages.
@@ -134,8 +151,9 @@ public class SwimComp extends ComponentDefinition {
                 log.info("{} starting...", new Object[]{selfAddress.getId()});
             }
 
-            schedulePeriodicPing();
+            scheduleNextPing();
             schedulePeriodicStatus();
+            schedulePeriodicRelaySweep();
         }
 
     };
@@ -149,12 +167,16 @@ public class SwimComp extends ComponentDefinition {
             }
 
             if (pingTimeoutId != null) {
-                cancelPeriodicPing();
+                cancelNextPing();
             }
 
             if (statusTimeoutId != null) {
                 cancelPeriodicStatus();
             }
+
+            if (relaySweepTimeoutId != null) {
+                cancelPeriodicRelaySweep();
+            }
         }
 
     };
@@ -178,7 +200,7 @@ public class SwimComp extends ComponentDefinition {
             }
 
             //Send a pong
-            Pong pong = nodeHandler.getPong(event.getContent().getPingNr(), incarnationCounter);
+            Pong pong = nodeHandler.getPong(event.getSource(), event.getContent().getPingNr(), incarnationCounter);
             trigger(new NetPong(selfAddress, event.getSource(), pong), network);
 
             if (LOGGING_GIVEN) {
@@ -197,16 +219,36 @@ public class SwimComp extends ComponentDefinition {
             }
 
             //If the ping number of the pong was in the list of sent pings, it was a regular ping.
-            boolean wasRegularPing = sentPingNrs.remove(Integer.valueOf(event.getContent().getPingNr()));
-            if (wasRegularPing) {
+            PendingPings.PendingPing pendingPing = removePendingPing(event.getContent().getPingNr());
+            if (pendingPing != null) {
+                long roundTrip = System.currentTimeMillis() - pendingPing.getSentAt();
+                if (LOGGING_GIVEN) {
+                    log.info("{} pong num {} round trip: {} ms", new Object[]{selfAddress.getId(), pendingPing.getPingNr(), roundTrip});
+                }
+
+                sampleRtt(event.getSource(), roundTrip);
+
+                //A pong later than the ping timeout hints that this node is the slow one.
+                boolean changed = roundTrip > pendingPing.getTimeout() ? localHealth.increase() : localHealth.decrease();
+                if (changed) {
+                    localHealthChanged();
+                }
+
                 //Adding new nodes to alive node list, considering incarnation numbers.
                 for (NatedAddress address : event.getContent().getNewNodes().keySet()) {
                     nodeHandler.addAlive(address, event.getContent().getNewNodes().get(address));
+                    endRefutedSuspicion(address);
                 }
 
                 //Adding all suspected nodes to our suspected list, considering incarnation numbers into account.
+                //A suspicion confirms ours on behalf of the node that raised it, not of the node that passed it on.
                 for (NatedAddress address : event.getContent().getSuspectedNodes().keySet()) {
-                    nodeHandler.addSuspected(address, event.getContent().getSuspectedNodes().get(address));
+                    int suspectedIncarnation = event.getContent().getSuspectedNodes().get(address);
+                    int suspecterId = event.getContent().getSuspecters().get(address);
+                    nodeHandler.addSuspected(address, suspectedIncarnation, suspecterId);
+                    if (nodeHandler.isSuspected(address) && nodeHandler.getIncarnation(address) == suspectedIncarnation) {
+                        suspect(address, suspectedIncarnation, Suspicion.NO_PING, suspecterId);
+                    }
                 }
 
                 //Adding all dead nodes to the dead list.
@@ -216,10 +258,12 @@ public class SwimComp extends ComponentDefinition {
                     }
 
                     nodeHandler.addDead(address, event.getContent().getDeadNodes().get(address));
+                    endSuspicion(address);
                 }
 
                 //Add the node who sent the pong to the alive list.
                 nodeHandler.copyAlive(event.getSource(), event.getContent().getIncarnationCounter());
+                endRefutedSuspicion(event.getSource());
 
                 //finding then node itself in the suspected list
                 if (event.getContent().getSuspectedNodes().containsKey(selfAddress)) {
@@ -227,24 +271,32 @@ public class SwimComp extends ComponentDefinition {
                         log.info("{} Found self in suspected list from node: {}", new Object[]{selfAddress.getId(), event.getSource()});
                     }
 
-                    //Increase the incarnation number and send Alive messages to all alive nodes.
+                    //Increase the incarnation number and piggyback it ahead of every other update.
                     incarnationCounter++;
+                    if (localHealth.increase()) {
+                        localHealthChanged();
+                    }
+                    nodeHandler.refute(incarnationCounter);
 
-                    for (NatedAddress address : nodeHandler.getAliveNodes().keySet()) {
+                    //Tell a few random nodes right away, the piggybacked refutation reaches the rest.
+                    for (NatedAddress address : nodeHandler.getRandomAliveNodes(config.aliveFanout)) {
                         trigger(new NetAliveMsg(selfAddress, address, incarnationCounter), network);
                     }
                 }
             }
-            //Otherwise, if not a regular ping it was a K-ping. Check if it is still in sent list.
-            else if (sentIndirectPings.containsKey(event.getContent().getPingNr())) {
-                if (LOGGING_GIVEN) {
-                    log.info("{} forwarding KPing result for suspected node {} to: {}", new Object[]{selfAddress.getId(), event.getSource(), sentIndirectPings.get(event.getContent().getPingNr())});
-                }
+            //Otherwise, if not a regular ping it was a K-ping. Check if it is still relayed.
+            else {
+                RelayTable.Relay relay = relays.remove(event.getContent().getPingNr());
+                if (relay != null) {
+                    cancelTimeout(relay.getNackTimeoutId());
+
+                    if (LOGGING_GIVEN) {
+                        log.info("{} forwarding KPing result for suspected node {} to: {}", new Object[]{selfAddress.getId(), event.getSource(), relay.getRequester()});
+                    }
 
-                //Forward response to a k-ping to the requester node.
-                trigger(new NetKIndirectPong(selfAddress, sentIndirectPings.get(event.getContent().getPingNr()), event.getSource(), event.getContent().getIncarnationCounter(), kPingNrToPingNrMapping.get(event.getContent().getPingNr())), network);
-                sentIndirectPings.remove(event.getContent().getPingNr());
-                kPingNrToPingNrMapping.remove(event.getContent().getPingNr());
+                    //Forward response to a k-ping to the requester node.
+                    trigger(new NetKIndirectPong(selfAddress, relay.getRequester(), event.getSource(), event.getContent().getIncarnationCounter(), relay.getRequesterPingNr()), network);
+                }
             }
 
             if (LOGGING_GIVEN) {
@@ -285,6 +337,7 @@ public class SwimComp extends ComponentDefinition {
             }
 
             nodeHandler.addAlive(netAlive.getSource(), netAlive.getContent().getIncarnationCounter());
+            endRefutedSuspicion(netAlive.getSource());
         }
 
     };
@@ -299,13 +352,59 @@ public class SwimComp extends ComponentDefinition {
             }
 
             trigger(new NetPing(selfAddress, netKPing.getContent().getAddressToPing(), sentPings, incarnationCounter), network);
-            sentIndirectPings.put(sentPings, netKPing.getSource());
-            kPingNrToPingNrMapping.put(sentPings, netKPing.getContent().getPingNr());
+            relays.add(sentPings, netKPing.getSource(), netKPing.getContent().getAddressToPing(), netKPing.getContent().getPingNr(), System.currentTimeMillis());
+
+            //Tell the requester before its own timeout if the node does not answer us either.
+            ScheduleTimeout scheduleTimeout = new ScheduleTimeout(localHealth.scale((long) (config.suspectedTimeout * NACK_TIMEOUT_RATIO)));
+            NackTimeout nackTimeout = new NackTimeout(scheduleTimeout, sentPings);
+            scheduleTimeout.setTimeoutEvent(nackTimeout);
+            trigger(scheduleTimeout, timer);
+            relays.get(sentPings).setNackTimeoutId(nackTimeout.getTimeoutId());
+
             sentPings++;
         }
 
     };
 
+    // Handler for a relayed ping still unanswered, nack it to the requester. A later pong is still forwarded.
+    private Handler<NackTimeout> handleNackTimeout = new Handler<NackTimeout>() {
+
+        @Override
+        public void handle(NackTimeout nackTimeout) {
+            firedTimeouts++;
+            RelayTable.Relay relay = relays.get(nackTimeout.getPingNr());
+            if (relay != null) {
+                relay.setNackTimeoutId(null);
+                if (LOGGING_GIVEN) {
+                    log.info("{} sending KNack for suspected node {} to: {}", new Object[]{selfAddress.getId(), relay.getTarget(), relay.getRequester()});
+                }
+
+                trigger(new NetKIndirectNack(selfAddress, relay.getRequester(), relay.getTarget(), relay.getRequesterPingNr()), network);
+            }
+        }
+
+    };
+
+    // Handler for a helper that could not reach the suspected node either. Once every helper nacked there is nothing left to wait for.
+    private Handler<NetKIndirectNack> handleNetKNack = new Handler<NetKIndirectNack>() {
+
+        @Override
+        public void handle(NetKIndirectNack netKNack) {
+            if (LOGGING_GIVEN) {
+                log.info("{} received KNack for suspected node {} from: {}", new Object[]{selfAddress.getId(), netKNack.getContent().getAddress(), netKNack.getSource()});
+            }
+
+            PendingPings.PendingPing pendingPing = pendingPings.get(netKNack.getContent().getPingNr());
+            if (pendingPing != null && !pendingPing.isSuspicionStarted()) {
+                pendingPing.addNack();
+                if (pendingPing.getNacks() >= pendingPing.getIndirectProbes()) {
+                    startSuspicion(pendingPing);
+                }
+            }
+        }
+
+    };
+
     //  Handler for a receivied response for the K-ping, add the node to the alive list
     private Handler<NetKIndirectPong> handleNetKPong = new Handler<NetKIndirectPong>() {
 
@@ -316,7 +415,8 @@ public class SwimComp extends ComponentDefinition {
             }
 
             nodeHandler.copyAlive(netKPong.getContent().getAddress(), netKPong.getContent().getIncarnationCounter());
-            sentPingNrs.remove((Integer) netKPong.getContent().getPingNr());
+            removePendingPing(netKPong.getContent().getPingNr());
+            endRefutedSuspicion(netKPong.getContent().getAddress());
 
             if (LOGGING_GIVEN) {
                 nodeHandler.printAliveNodes();
@@ -330,6 +430,11 @@ public class SwimComp extends ComponentDefinition {
 
         @Override
         public void handle(PingTimeout event) {
+            if (!event.getTimeoutId().equals(pingTimeoutId)) {
+                return;
+            }
+            scheduleNextPing();
+
             NatedAddress partnerAddress = nodeHandler.getRandomAliveNode();
 
             if (partnerAddress != null) {
@@ -341,12 +446,14 @@ public class SwimComp extends ComponentDefinition {
                 trigger(new NetPing(selfAddress, partnerAddress, sentPings, incarnationCounter), network);
 
                 //Start a timer for when the ping will timeout and we will suspect the node being dead.
-                ScheduleTimeout scheduleTimeout = new ScheduleTimeout(PING_TIMEOUT);
+                long timeout = localHealth.scale(pingTimeout(partnerAddress));
+                ScheduleTimeout scheduleTimeout = new ScheduleTimeout(timeout);
                 PongTimeout pongTimeout = new PongTimeout(scheduleTimeout, sentPings, partnerAddress);
                 scheduleTimeout.setTimeoutEvent(pongTimeout);
                 trigger(scheduleTimeout, timer);
 
-                sentPingNrs.add(sentPings);
+                pendingPings.add(sentPings, partnerAddress, System.currentTimeMillis(), timeout);
+                pendingPings.get(sentPings).setTimeoutId(pongTimeout.getTimeoutId());
                 sentPings++;
             }
         }
@@ -362,22 +469,35 @@ public class SwimComp extends ComponentDefinition {
                 log.info("{} sending status num:{} to bootstrap:{}", new Object[]{selfAddress.getId(), sentStatuses, aggregatorAddress});
             }
 
-            //Send a status of nodes to the bootstrap component periodically
-            Map<NatedAddress, Integer> sendAliveNodes = new HashMap<NatedAddress, Integer>(nodeHandler.getAliveNodes());
-            trigger(new NetStatusMsg(selfAddress, aggregatorAddress, new Status(sentStatuses, receivedPings, sentPings, sendAliveNodes, nodeHandler.getSuspectedNodes(), nodeHandler.getDeadNodes())), network);
+            //Send a status of nodes to the bootstrap component periodically, as a delta of the last acknowledged one when possible
+            Status status = nodeHandler.getStatus(sentStatuses, receivedPings, sentPings, DELTA_STATUS, FULL_STATUS_PERIOD);
+            status.setSmoothedRtt((int) rtt.getSmoothedRtt());
+            status.setRttVariation((int) rtt.getRttVariation());
+            trigger(new NetStatusMsg(selfAddress, aggregatorAddress, status), network);
 
             sentStatuses++;
         }
 
     };
 
+    private Handler<NetStatusAck> handleStatusAck = new Handler<NetStatusAck>() {
+
+        @Override
+        public void handle(NetStatusAck event) {
+            //The aggregator holds this status, later deltas are computed against it.
+            nodeHandler.statusAcked(event.getContent().getStatusNr());
+        }
+
+    };
+
     // Handler for pong timeout and if response to ping wasn't received before pong timeout, the node will become suspected and 
    //Send K-Indirect pings  are sent to ping the node who didn't respond to the ping.
     private Handler<PongTimeout> handlePongTimeout = new Handler<PongTimeout>() {
 
         @Override
         public void handle(PongTimeout pongTimeout) {
-            if (sentPingNrs.contains(pongTimeout.getPingNr())) {
+            firedTimeouts++;
+            if (pendingPings.contains(pongTimeout.getPingNr())) {
                 if (LOGGING_GIVEN) {
                     log.info("{} Suspected missing ping nr {} from node: {}", new Object[]{selfAddress.getId(), pongTimeout.getPingNr(), pongTimeout.getAddress()});
                 }
@@ -391,7 +511,10 @@ public class SwimComp extends ComponentDefinition {
                 Collections.shuffle(aliveNodes, rand);
 
                 //Sending K indirect pings.
-                for (int i = 0; i < K_INDIRECT && i < aliveNodes.size(); i++) {
+                int indirectProbes = Math.min(config.kIndirect, aliveNodes.size());
+                PendingPings.PendingPing pendingPing = pendingPings.get(pongTimeout.getPingNr());
+                pendingPing.setIndirectProbes(indirectProbes);
+                for (int i = 0; i < indirectProbes; i++) {
                     if (LOGGING_GIVEN) {
                         log.info("{} sending KPing for suspected node {} to: {}", new Object[]{selfAddress.getId(), pongTimeout.getAddress(), aliveNodes.get(i)});
                     }
@@ -400,10 +523,11 @@ public class SwimComp extends ComponentDefinition {
                 }
 
                 //Initiating other timer for the K-pings to finish before declaring the node suspected.
-                ScheduleTimeout scheduleTimeout = new ScheduleTimeout(SUSPECTED_TIMEOUT);
+                ScheduleTimeout scheduleTimeout = new ScheduleTimeout(localHealth.scale(config.suspectedTimeout));
                 SuspectedTimeout suspectedTimeout = new SuspectedTimeout(scheduleTimeout, pongTimeout.getAddress(), pongTimeout.getPingNr());
                 scheduleTimeout.setTimeoutEvent(suspectedTimeout);
                 trigger(scheduleTimeout, timer);
+                pendingPing.setTimeoutId(suspectedTimeout.getTimeoutId());
             }
         }
     };
@@ -413,29 +537,123 @@ public class SwimComp extends ComponentDefinition {
 
         @Override
         public void handle(SuspectedTimeout suspectedTimeout) {
+            firedTimeouts++;
             //If k-pings timeout and the node is still suspected, declare the node dead.
-            if (sentPingNrs.contains(suspectedTimeout.getPingNr())) {
-                if (LOGGING_GIVEN) {
-                    log.info("{} Suspected node: {}", new Object[]{selfAddress.getId(), suspectedTimeout.getAddress()});
+            PendingPings.PendingPing pendingPing = pendingPings.get(suspectedTimeout.getPingNr());
+            if (pendingPing != null && !pendingPing.isSuspicionStarted()) {
+                pendingPing.setTimeoutId(null);
+                //Helpers that did not even nack could not reach us, or we could not hear them: this node may be the slow one.
+                if (pendingPing.getNacks() < pendingPing.getIndirectProbes() && localHealth.increase()) {
+                    localHealthChanged();
                 }
 
-                //Ttimer for the K-pings to end before declaring the node suspected.
-                ScheduleTimeout scheduleTimeout = new ScheduleTimeout(DEAD_TIMEOUT);
-                DeadTimeout deadTimeout = new DeadTimeout(scheduleTimeout, suspectedTimeout.getAddress(), suspectedTimeout.getPingNr());
-                scheduleTimeout.setTimeoutEvent(deadTimeout);
-                trigger(scheduleTimeout, timer);
+                startSuspicion(pendingPing);
             }
         }
     };
 
+    private void startSuspicion(PendingPings.PendingPing pendingPing) {
+        if (LOGGING_GIVEN) {
+            log.info("{} Suspected node: {}, nacks:{}/{}", new Object[]{selfAddress.getId(), pendingPing.getTarget(), pendingPing.getNacks(), pendingPing.getIndirectProbes()});
+        }
+        pendingPing.setSuspicionStarted(true);
+        //Every helper nacked before the suspected timeout, it has nothing left to wait for.
+        cancelTimeout(pendingPing.getTimeoutId());
+        pendingPing.setTimeoutId(null);
+
+        NatedAddress target = pendingPing.getTarget();
+        if (nodeHandler.isSuspected(target)) {
+            suspect(target, nodeHandler.getIncarnation(target), pendingPing.getPingNr(), selfAddress.getId());
+        }
+        else {
+            //Refuted or declared dead while the K-pings were out.
+            removePendingPing(pendingPing.getPingNr());
+        }
+    }
+
+    /**
+     * Suspicion state machine of one member, kept in the SuspicionTable. A
+     * suspicion raised by another node of the same incarnation confirms ours,
+     * which can only bring the dead timeout closer. Confirmations are counted
+     * by the node that raised the suspicion, so gossip of one suspicion
+     * arriving over several paths counts once, and our own suspicion gossiped
+     * back counts not at all.
+     */
+    private void suspect(NatedAddress address, int incarnation, int pingNr, int suspecterId) {
+        if (address.getId().intValue() == selfAddress.getId().intValue()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<UUID> cancelled = new ArrayList<UUID>();
+        Integer confirmerId = suspecterId == selfAddress.getId() ? null : suspecterId;
+        Suspicion suspicion = suspicions.suspect(address, incarnation, pingNr, confirmerId, now, config, cancelled);
+        cancelTimeouts(cancelled);
+        if (suspicion != null) {
+            if (LOGGING_GIVEN) {
+                log.info("{} suspicion of node {} incarnation {} confirmations:{}", new Object[]{selfAddress.getId(), address, incarnation, suspicion.getConfirmations()});
+            }
+            //Timer for declaring the node dead, shortened as other nodes confirm the suspicion.
+            scheduleDeadTimeout(suspicion, suspicion.remaining(now));
+        }
+    }
+
+    //A suspected node we now hold alive refuted the suspicion.
+    private void endRefutedSuspicion(NatedAddress address) {
+        if (suspicions.get(address.getId()) != null && !nodeHandler.isSuspected(address)) {
+            if (LOGGING_GIVEN) {
+                log.info("{} suspicion of node {} refuted", new Object[]{selfAddress.getId(), address});
+            }
+            endSuspicion(address);
+        }
+    }
+
+    //Drops the suspicion of the node with its dead timeout and the failed ping behind it.
+    private void endSuspicion(NatedAddress address) {
+        List<UUID> cancelled = new ArrayList<UUID>();
+        suspicions.end(address.getId(), cancelled);
+        cancelTimeouts(cancelled);
+    }
+
+    //Forgets the ping and cancels the timeout still scheduled for it.
+    private PendingPings.PendingPing removePendingPing(int pingNr) {
+        PendingPings.PendingPing pendingPing = pendingPings.remove(pingNr);
+        if (pendingPing != null) {
+            cancelTimeout(pendingPing.getTimeoutId());
+        }
+        return pendingPing;
+    }
+
+    private void cancelTimeout(UUID timeoutId) {
+        if (timeoutId != null) {
+            trigger(new CancelTimeout(timeoutId), timer);
+            cancelledTimeouts++;
+        }
+    }
+
+    private void cancelTimeouts(List<UUID> timeoutIds) {
+        for (UUID timeoutId : timeoutIds) {
+            cancelTimeout(timeoutId);
+        }
+    }
+
    
    
     private Handler<DeadTimeout> handleDeadTimeout = new Handler<DeadTimeout>() {
 
         @Override
         public void handle(DeadTimeout deadTimeout) {
-            //If k-pings timeout and the node is still suspected, declare the node dead.
-            if (sentPingNrs.contains(deadTimeout.getPingNr()) && nodeHandler.addDead(deadTimeout.getAddress())) {
+            //Only the latest timer of a suspicion counts, a cancelled one may still fire.
+            Suspicion suspicion = suspicions.get(deadTimeout.getAddress().getId());
+            if (suspicion == null || !suspicion.getTimeoutId().equals(deadTimeout.getTimeoutId())) {
+                return;
+            }
+            firedTimeouts++;
+            suspicion.setTimeoutId(null);
+            endSuspicion(deadTimeout.getAddress());
+
+            //If the node is still suspected, declare the node dead.
+            if (nodeHandler.addDead(deadTimeout.getAddress())) {
                 if (LOGGING_GIVEN) {
                     log.info("{} Declared node dead: {}", new Object[]{selfAddress.getId(), deadTimeout.getAddress()});
                 }
@@ -443,22 +661,110 @@ public class SwimComp extends ComponentDefinition {
         }
     };
 
-    private void schedulePeriodicPing() {
-        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(1000, 1000);
-        PingTimeout sc = new PingTimeout(spt);
-        spt.setTimeoutEvent(sc);
+    private Handler<RelaySweepTimeout> handleRelaySweepTimeout = new Handler<RelaySweepTimeout>() {
+
+        @Override
+        public void handle(RelaySweepTimeout event) {
+            relays.expire(System.currentTimeMillis());
+
+            if (LOGGING_GIVEN) {
+                log.info("{} relaying {} KPings, expired:{} dropped:{}", new Object[]{selfAddress.getId(), relays.size(), relays.getExpired(), relays.getDropped()});
+                log.info("{} probe timeouts fired:{} cancelled:{}", new Object[]{selfAddress.getId(), firedTimeouts, cancelledTimeouts});
+            }
+        }
+    };
+
+    private void sampleRtt(NatedAddress peer, long roundTrip) {
+        RttEstimator peerRtt = peerRtts.get(peer.getId());
+        if (peerRtt == null) {
+            peerRtt = new RttEstimator();
+            peerRtts.put(peer.getId(), peerRtt);
+        }
+        peerRtt.sample(roundTrip);
+        rtt.sample(roundTrip);
+
+        if (LOGGING_GIVEN) {
+            log.info("{} rtt to {}: srtt:{} rttvar:{}, all nodes: srtt:{} rttvar:{}", new Object[]{selfAddress.getId(), peer.getId(),
+                peerRtt.getSmoothedRtt(), peerRtt.getRttVariation(), rtt.getSmoothedRtt(), rtt.getRttVariation()});
+        }
+    }
+
+    //Timeout from the round trips measured to the node, or to all nodes before the first pong of the node, within the configured bounds.
+    private long pingTimeout(NatedAddress peer) {
+        RttEstimator estimator = peerRtts.get(peer.getId());
+        if (estimator == null || !estimator.hasSamples()) {
+            estimator = rtt;
+        }
+        if (!estimator.hasSamples()) {
+            return config.pingTimeout;
+        }
+        return Math.min(config.pingTimeout, Math.max(config.minPingTimeout, estimator.getTimeout()));
+    }
+
+    //Replaces the dead timeout of the suspicion, so each suspect has a single timer.
+    private void scheduleDeadTimeout(Suspicion suspicion, long delay) {
+        cancelTimeout(suspicion.getTimeoutId());
+        ScheduleTimeout scheduleTimeout = new ScheduleTimeout(delay);
+        DeadTimeout deadTimeout = new DeadTimeout(scheduleTimeout, suspicion.getAddress());
+        scheduleTimeout.setTimeoutEvent(deadTimeout);
+        suspicion.setTimeoutId(deadTimeout.getTimeoutId());
+        trigger(scheduleTimeout, timer);
+    }
+
+    //The probe period depends on the local health, the next probe is scheduled with the new one.
+    private void localHealthChanged() {
+        if (LOGGING_GIVEN) {
+            log.info("{} local health score: {}", new Object[]{selfAddress.getId(), localHealth.getScore()});
+        }
+    }
+
+    //Applies a new configuration, rescheduling the periodic pings and statuses with the new periods.
+    private Handler<SwimConfigUpdate> handleConfigUpdate = new Handler<SwimConfigUpdate>() {
+
+        @Override
+        public void handle(SwimConfigUpdate event) {
+            if (LOGGING_GIVEN) {
+                log.info("{} updating configuration to {}", new Object[]{selfAddress.getId(), event.getConfig()});
+            }
+
+            config = event.getConfig();
+            nodeHandler.setConfig(config);
+            relays.setTimeToLive(relayTimeToLive());
+            localHealth.setMaxScore(config.maxLocalHealth);
+
+            if (pingTimeoutId != null) {
+                cancelNextPing();
+                scheduleNextPing();
+            }
+
+            if (statusTimeoutId != null) {
+                cancelPeriodicStatus();
+                schedulePeriodicStatus();
+            }
+        }
+    };
+
+    //A relayed ping is given up on once the requester declared the node dead.
+    private long relayTimeToLive() {
+        return config.suspectedTimeout + config.deadTimeout;
+    }
+
+    private void scheduleNextPing() {
+        ScheduleTimeout st = new ScheduleTimeout(localHealth.scale(config.pingPeriod));
+        PingTimeout sc = new PingTimeout(st);
+        st.setTimeoutEvent(sc);
         pingTimeoutId = sc.getTimeoutId();
-        trigger(spt, timer);
+        trigger(st, timer);
     }
 
-    private void cancelPeriodicPing() {
+    private void cancelNextPing() {
         CancelTimeout cpt = new CancelTimeout(pingTimeoutId);
         trigger(cpt, timer);
         pingTimeoutId = null;
     }
 
     private void schedulePeriodicStatus() {
-        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(1000, AGGREGATOR_TIMEOUT);
+        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(1000, config.aggregatorPeriod);
         StatusTimeout sc = new StatusTimeout(spt);
         spt.setTimeoutEvent(sc);
         statusTimeoutId = sc.getTimeoutId();
@@ -471,18 +777,34 @@ public class SwimComp extends ComponentDefinition {
         statusTimeoutId = null;
     }
 
+    private void schedulePeriodicRelaySweep() {
+        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(RELAY_SWEEP_PERIOD, RELAY_SWEEP_PERIOD);
+        RelaySweepTimeout sc = new RelaySweepTimeout(spt);
+        spt.setTimeoutEvent(sc);
+        relaySweepTimeoutId = sc.getTimeoutId();
+        trigger(spt, timer);
+    }
+
+    private void cancelPeriodicRelaySweep() {
+        CancelTimeout cpt = new CancelTimeout(relaySweepTimeoutId);
+        trigger(cpt, timer);
+        relaySweepTimeoutId = null;
+    }
+
     public static class SwimInit extends Init<SwimComp> {
 
     public final NatedAddress selfAddress;
     public final Set<NatedAddress> bootstrapNodes;
     public final NatedAddress aggregatorAddress;
     public final long seed;
+    public final SwimConfig config;
 
-    public SwimInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, long seed) {
+    public SwimInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, long seed, SwimConfig config) {
         this.selfAddress = selfAddress;
         this.bootstrapNodes = bootstrapNodes;
         this.aggregatorAddress = aggregatorAddress;
         this.seed = seed;
+        this.config = config;
     }
 }
 
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+/**
+ * Parameters of the SWIM protocol. Times are in milliseconds. The defaults
+ * are changed by name through a {@link Builder}:
+ * <pre>
+ * new SwimConfig.Builder().lambda(3).piggybackMessageSize(6).build()
+ * </pre>
+ */
+public class SwimConfig {
+
+    public final int kIndirect; //Number of nodes used for indirect K-ping request
+    public final long pingPeriod; //Period of pinging a random alive node
+    public final long pingTimeout; //Timeout for a pong before starting K-indirect pings, upper bound of the measured round trip timeout
+    public final long minPingTimeout; //Lower bound of the ping timeout derived from measured round trips
+    public final long suspectedTimeout; //Timeout for declaring it suspected
+    public final long deadTimeout; //Timeout for declaring it dead
+    public final long aggregatorPeriod; //Latency for sending info to aggregator
+    public final int lambda; //Number of times the node status change is piggybacked. Lambda * log(n)
+    public final int piggybackMessageSize; //Maximum number of piggybacked updates in each pong.
+    public final int piggybackByteBudget; //Encoded bytes of piggybacked updates in each pong.
+    public final int maxLocalHealth; //Highest local health score, probe periods and timeouts are stretched up to maxLocalHealth + 1 times.
+    public final long minDeadTimeout; //Timeout for declaring it dead once enough other nodes confirmed the suspicion
+    public final int suspicionConfirmations; //Independent suspicions needed to shrink the dead timeout down to minDeadTimeout
+    public final int aliveFanout; //Random nodes sent an alive message directly when refuting a suspicion, on top of piggybacking it
+    public final long coalesceWindow; //Time messages to the same node wait to be sent in one datagram, 0 sends every message on its own
+
+    //Default settings. For the analysis of convergence by limiting message size and lambda, use piggybackMessageSize = 6 and lambda = 3.
+    public SwimConfig() {
+        this(new Builder());
+    }
+
+    private SwimConfig(Builder builder) {
+        this.kIndirect = builder.kIndirect;
+        this.pingPeriod = builder.pingPeriod;
+        this.pingTimeout = builder.pingTimeout;
+        this.minPingTimeout = builder.minPingTimeout;
+        this.suspectedTimeout = builder.suspectedTimeout;
+        this.deadTimeout = builder.deadTimeout;
+        this.aggregatorPeriod = builder.aggregatorPeriod;
+        this.lambda = builder.lambda;
+        this.piggybackMessageSize = builder.piggybackMessageSize;
+        this.piggybackByteBudget = builder.piggybackByteBudget;
+        this.maxLocalHealth = builder.maxLocalHealth;
+        this.minDeadTimeout = builder.minDeadTimeout;
+        this.suspicionConfirmations = builder.suspicionConfirmations;
+        this.aliveFanout = builder.aliveFanout;
+        this.coalesceWindow = builder.coalesceWindow;
+    }
+
+    @Override
+    public String toString() {
+        return "SwimConfig{kIndirect=" + kIndirect + ", pingPeriod=" + pingPeriod + ", pingTimeout=" + pingTimeout + ", minPingTimeout=" + minPingTimeout
+                + ", suspectedTimeout=" + suspectedTimeout + ", deadTimeout=" + deadTimeout + ", aggregatorPeriod=" + aggregatorPeriod
+                + ", lambda=" + lambda + ", piggybackMessageSize=" + piggybackMessageSize + ", piggybackByteBudget=" + piggybackByteBudget
+                + ", maxLocalHealth=" + maxLocalHealth + ", minDeadTimeout=" + minDeadTimeout + ", suspicionConfirmations=" + suspicionConfirmations
+                + ", aliveFanout=" + aliveFanout + ", coalesceWindow=" + coalesceWindow + "}";
+    }
+
+    /**
+     * Starts from the default settings, or from those of an existing config.
+     */
+    public static class Builder {
+
+        private int kIndirect = 4;
+        private long pingPeriod = 1000;
+        private long pingTimeout = 2000;
+        private long minPingTimeout = 200;
+        private long suspectedTimeout = 2000;
+        private long deadTimeout = 2000;
+        private long aggregatorPeriod = 1000;
+        private int lambda = 3;
+        private int piggybackMessageSize = 10000000;
+        private int piggybackByteBudget = 1500 - 20 - 8 - 64; //Path MTU minus IP, UDP and SWIM headers.
+        private int maxLocalHealth = 8;
+        private long minDeadTimeout = 500;
+        private int suspicionConfirmations = 3;
+        private int aliveFanout = 3;
+        private long coalesceWindow = 2;
+
+        public Builder() {
+        }
+
+        public Builder(SwimConfig config) {
+            this.kIndirect = config.kIndirect;
+            this.pingPeriod = config.pingPeriod;
+            this.pingTimeout = config.pingTimeout;
+            this.minPingTimeout = config.minPingTimeout;
+            this.suspectedTimeout = config.suspectedTimeout;
+            this.deadTimeout = config.deadTimeout;
+            this.aggregatorPeriod = config.aggregatorPeriod;
+            this.lambda = config.lambda;
+            this.piggybackMessageSize = config.piggybackMessageSize;
+            this.piggybackByteBudget = config.piggybackByteBudget;
+            this.maxLocalHealth = config.maxLocalHealth;
+            this.minDeadTimeout = config.minDeadTimeout;
+            this.suspicionConfirmations = config.suspicionConfirmations;
+            this.aliveFanout = config.aliveFanout;
+            this.coalesceWindow = config.coalesceWindow;
+        }
+
+        public Builder kIndirect(int kIndirect) {
+            this.kIndirect = kIndirect;
+            return this;
+        }
+
+        public Builder pingPeriod(long pingPeriod) {
+            this.pingPeriod = pingPeriod;
+            return this;
+        }
+
+        // Bounds of the ping timeout derived from measured round trips.
+        public Builder pingTimeout(long minPingTimeout, long pingTimeout) {
+            this.minPingTimeout = minPingTimeout;
+            this.pingTimeout = pingTimeout;
+            return this;
+        }
+
+        public Builder suspectedTimeout(long suspectedTimeout) {
+            this.suspectedTimeout = suspectedTimeout;
+            return this;
+        }
+
+        // Dead timeout of an unconfirmed suspicion, and the one it shrinks to with every confirmation up to suspicionConfirmations.
+        public Builder deadTimeout(long minDeadTimeout, long deadTimeout, int suspicionConfirmations) {
+            this.minDeadTimeout = minDeadTimeout;
+            this.deadTimeout = deadTimeout;
+            this.suspicionConfirmations = suspicionConfirmations;
+            return this;
+        }
+
+        public Builder aggregatorPeriod(long aggregatorPeriod) {
+            this.aggregatorPeriod = aggregatorPeriod;
+            return this;
+        }
+
+        public Builder lambda(int lambda) {
+            this.lambda = lambda;
+            return this;
+        }
+
+        public Builder piggybackMessageSize(int piggybackMessageSize) {
+            this.piggybackMessageSize = piggybackMessageSize;
+            return this;
+        }
+
+        public Builder piggybackByteBudget(int piggybackByteBudget) {
+            this.piggybackByteBudget = piggybackByteBudget;
+            return this;
+        }
+
+        public Builder maxLocalHealth(int maxLocalHealth) {
+            this.maxLocalHealth = maxLocalHealth;
+            return this;
+        }
+
+        public Builder aliveFanout(int aliveFanout) {
+            this.aliveFanout = aliveFanout;
+            return this;
+        }
+
+        public Builder coalesceWindow(long coalesceWindow) {
+            this.coalesceWindow = coalesceWindow;
+            return this;
+        }
+
+        public SwimConfig build() {
+            if (minPingTimeout > pingTimeout || minDeadTimeout > deadTimeout) {
+                throw new IllegalArgumentException("lower timeout bound above the upper one");
+            }
+            return new SwimConfig(this);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import se.kth.swim.timeout.WheelTickTimeout;
+import se.kth.swim.util.TimerWheel;
+import se.sics.kompics.*;
+import se.sics.kompics.timer.CancelPeriodicTimeout;
+import se.sics.kompics.timer.CancelTimeout;
+import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.timer.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Timer of the components of one host, kept in a hashed timer wheel. It
+ * provides the Kompics Timer port to SWIM, NAT traversal and Croupier and
+ * needs a single periodic timeout from the shared timer to turn the wheel, so
+ * scheduling and cancelling a timeout never reach the shared timer. A timeout
+ * fires on the first tick after it is due, at most one tick late.
+ */
+public class TimerWheelComp extends ComponentDefinition {
+
+    private Negative<Timer> local = provides(Timer.class);
+    private Positive<Timer> timer = requires(Timer.class);
+
+    private final long tick;
+    private final TimerWheel<Timeout> wheel;
+    private final List<Timeout> expired;
+    private UUID tickTimeoutId;
+
+    public TimerWheelComp(TimerWheelInit init) {
+        this.tick = init.tick;
+        this.wheel = new TimerWheel<Timeout>(init.wheelSize);
+        this.expired = new ArrayList<Timeout>();
+
+        subscribe(handleStart, control);
+        subscribe(handleStop, control);
+        subscribe(handleScheduleTimeout, local);
+        subscribe(handleSchedulePeriodicTimeout, local);
+        subscribe(handleCancelTimeout, local);
+        subscribe(handleCancelPeriodicTimeout, local);
+        subscribe(handleTick, timer);
+    }
+
+    private Handler<Start> handleStart = new Handler<Start>() {
+
+        @Override
+        public void handle(Start event) {
+            SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(tick, tick);
+            WheelTickTimeout wt = new WheelTickTimeout(spt);
+            spt.setTimeoutEvent(wt);
+            trigger(spt, timer);
+            tickTimeoutId = wt.getTimeoutId();
+        }
+
+    };
+
+    private Handler<Stop> handleStop = new Handler<Stop>() {
+
+        @Override
+        public void handle(Stop event) {
+            if (tickTimeoutId != null) {
+                trigger(new CancelPeriodicTimeout(tickTimeoutId), timer);
+                tickTimeoutId = null;
+            }
+        }
+
+    };
+
+    private Handler<ScheduleTimeout> handleScheduleTimeout = new Handler<ScheduleTimeout>() {
+
+        @Override
+        public void handle(ScheduleTimeout event) {
+            Timeout timeout = event.getTimeoutEvent();
+            wheel.schedule(timeout.getTimeoutId(), timeout, ticks(event.getDelay()), 0);
+        }
+
+    };
+
+    private Handler<SchedulePeriodicTimeout> handleSchedulePeriodicTimeout = new Handler<SchedulePeriodicTimeout>() {
+
+        @Override
+        public void handle(SchedulePeriodicTimeout event) {
+            Timeout timeout = event.getTimeoutEvent();
+            wheel.schedule(timeout.getTimeoutId(), timeout, ticks(event.getDelay()), periodTicks(event.getPeriod()));
+        }
+
+    };
+
+    private Handler<CancelTimeout> handleCancelTimeout = new Handler<CancelTimeout>() {
+
+        @Override
+        public void handle(CancelTimeout event) {
+            wheel.cancel(event.getTimeoutId());
+        }
+
+    };
+
+    private Handler<CancelPeriodicTimeout> handleCancelPeriodicTimeout = new Handler<CancelPeriodicTimeout>() {
+
+        @Override
+        public void handle(CancelPeriodicTimeout event) {
+            wheel.cancel(event.getTimeoutId());
+        }
+
+    };
+
+    private Handler<WheelTickTimeout> handleTick = new Handler<WheelTickTimeout>() {
+
+        @Override
+        public void handle(WheelTickTimeout event) {
+            wheel.tick(expired);
+            for (Timeout timeout : expired) {
+                trigger(timeout, local);
+            }
+            expired.clear();
+        }
+
+    };
+
+    // The wheel turns on the tick boundaries, one more tick than the delay holds makes up for the part of the current tick already gone.
+    private long ticks(long delay) {
+        return delay / tick + 1;
+    }
+
+    // Periods are rounded to the nearest whole tick so periodic timeouts do not drift.
+    private long periodTicks(long period) {
+        return Math.max(1, (period + tick / 2) / tick);
+    }
+
+    public static class TimerWheelInit extends Init<TimerWheelComp> {
+
+        public final long tick;
+        public final int wheelSize;
+
+        public TimerWheelInit(long tick, int wheelSize) {
+            this.tick = tick;
+            this.wheelSize = wheelSize;
+        }
+    }
+
+}
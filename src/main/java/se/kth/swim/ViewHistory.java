@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import se.kth.swim.msg.Status;
+import se.sics.kompics.network.Address;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Latest full views reported by each node, by status number, kept as the bases
+ * of its delta statuses. A delta whose base is no longer kept cannot be
+ * rebuilt: it is left unacknowledged, so the node falls back to a full report.
+ */
+public class ViewHistory {
+
+    private final int depth;
+    private final Map<Address, Map<Integer, Status>> recentViews = new HashMap<Address, Map<Integer, Status>>();
+
+    /**
+     * @param depth views kept per node.
+     */
+    public ViewHistory(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Rebuilds the full view of a status and keeps it as a base for the later ones.
+     *
+     * @return the full view, or null if the status is a delta of a view no longer kept.
+     */
+    public Status add(Address reporter, Status status) {
+        Map<Integer, Status> views = recentViews.get(reporter);
+        Status view = status;
+        if (!status.isFull()) {
+            Status base = views == null ? null : views.get(status.getBaseStatusNr());
+            if (base == null) {
+                return null;
+            }
+            view = applyDelta(base, status);
+        }
+
+        if (views == null) {
+            views = new LinkedHashMap<Integer, Status>() {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Status> eldest) {
+                    return size() > depth;
+                }
+
+            };
+            recentViews.put(reporter, views);
+        }
+        views.put(view.getStatusNr(), view);
+        return view;
+    }
+
+    /**
+     * Full view of a node rebuilt from the view of its base status and a delta
+     * listing the nodes whose state or incarnation changed since then.
+     */
+    private static Status applyDelta(Status base, Status delta) {
+        Map<NatedAddress, Integer> aliveNodes = new HashMap<NatedAddress, Integer>(base.getAliveNodes());
+        Map<NatedAddress, Integer> suspectedNodes = new HashMap<NatedAddress, Integer>(base.getSuspectedNodes());
+        Map<NatedAddress, Integer> deadNodes = new HashMap<NatedAddress, Integer>(base.getDeadNodes());
+
+        Set<Integer> changed = new HashSet<Integer>();
+        for (NatedAddress address : delta.getAliveNodes().keySet()) {
+            changed.add(address.getId());
+        }
+        for (NatedAddress address : delta.getDeadNodes().keySet()) {
+            changed.add(address.getId());
+        }
+
+        //Addresses may differ in their parents between views, so stale entries are removed by id.
+        removeIds(aliveNodes, changed);
+        removeIds(suspectedNodes, changed);
+        removeIds(deadNodes, changed);
+
+        aliveNodes.putAll(delta.getAliveNodes());
+        suspectedNodes.putAll(delta.getSuspectedNodes());
+        deadNodes.putAll(delta.getDeadNodes());
+
+        Status view = new Status(delta.getStatusNr(), delta.receivedPings, delta.sentPings, aliveNodes, suspectedNodes, deadNodes);
+        view.setSmoothedRtt(delta.getSmoothedRtt());
+        view.setRttVariation(delta.getRttVariation());
+        return view;
+    }
+
+    private static void removeIds(Map<NatedAddress, Integer> nodes, Set<Integer> ids) {
+        Iterator<NatedAddress> it = nodes.keySet().iterator();
+        while (it.hasNext()) {
+            if (ids.contains(it.next().getId())) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.kth.swim.msg;
+
+import se.kth.swim.msg.net.NetMsg;
+
+import java.util.List;
+
+/**
+ * Messages from one node to the same destination sent together in a single
+ * datagram. They all carry the source and destination of the bundle.
+ */
+public class Bundle {
+
+    private List<NetMsg> messages;
+
+    public Bundle(List<NetMsg> messages) {
+        this.messages = messages;
+    }
+
+    public List<NetMsg> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<NetMsg> messages) {
+        this.messages = messages;
+    }
+
+}
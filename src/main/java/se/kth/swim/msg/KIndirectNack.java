@@ -0,0 +1,35 @@
+package se.kth.swim.msg;
+
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Sent by a K-indirect ping helper whose own ping to the suspected node got no
+ * pong in time, so the requester knows the helper itself is reachable.
+ */
+public class KIndirectNack {
+
+    private NatedAddress address;
+    private int pingNr;
+
+    public KIndirectNack(NatedAddress address, int pingNr) {
+        this.address = address;
+        this.pingNr = pingNr;
+    }
+
+    public NatedAddress getAddress() {
+        return address;
+    }
+
+    public void setAddress(NatedAddress address) {
+        this.address = address;
+    }
+
+    public int getPingNr() {
+        return pingNr;
+    }
+
+    public void setPingNr(int pingNr) {
+        this.pingNr = pingNr;
+    }
+
+}
@@ -8,13 +8,16 @@ public class Pong {
 
     private Map<NatedAddress, Integer> newNodes;
     private Map<NatedAddress, Integer> suspectedNodes;
+    private Map<NatedAddress, Integer> suspecters;    //Id of the node that raised each suspicion, by suspected node.
     private Map<NatedAddress, Integer> deadNodes;
     private int pingNr;
     private int incarnationCounter;
 
-    public Pong(Map<NatedAddress, Integer> newNodes, Map<NatedAddress, Integer> suspectedNodes, Map<NatedAddress, Integer> deadNodes, int pingNr, int incarnationCounter) {
+    public Pong(Map<NatedAddress, Integer> newNodes, Map<NatedAddress, Integer> suspectedNodes, Map<NatedAddress, Integer> suspecters,
+            Map<NatedAddress, Integer> deadNodes, int pingNr, int incarnationCounter) {
         this.newNodes = newNodes;
         this.suspectedNodes = suspectedNodes;
+        this.suspecters = suspecters;
         this.deadNodes = deadNodes;
         this.pingNr = pingNr;
         this.incarnationCounter = incarnationCounter;
@@ -36,6 +39,14 @@ public class Pong {
         this.suspectedNodes = suspectedNodes;
     }
 
+    public Map<NatedAddress, Integer> getSuspecters() {
+        return suspecters;
+    }
+
+    public void setSuspecters(Map<NatedAddress, Integer> suspecters) {
+        this.suspecters = suspecters;
+    }
+
     public Map<NatedAddress, Integer> getDeadNodes() {
         return deadNodes;
     }
@@ -0,0 +1,44 @@
+package se.kth.swim.msg;
+
+/**
+ * Relay load of an open node, advertised as its Croupier view so NATed nodes
+ * looking for parents can leave out the saturated ones. Whether the node is
+ * saturated is decided by the node itself, with hysteresis, so the advertised
+ * state does not flip with every burst of dropped messages.
+ */
+public class RelayLoad {
+
+    private final int children;
+    private final int maxChildren;
+    private final double dropRate;    //Smoothed messages dropped over the relay quota per heartbeat period.
+    private final boolean saturated;
+
+    public RelayLoad(int children, int maxChildren, double dropRate, boolean saturated) {
+        this.children = children;
+        this.maxChildren = maxChildren;
+        this.dropRate = dropRate;
+        this.saturated = saturated;
+    }
+
+    public int getChildren() {
+        return children;
+    }
+
+    public int getMaxChildren() {
+        return maxChildren;
+    }
+
+    public double getDropRate() {
+        return dropRate;
+    }
+
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    @Override
+    public String toString() {
+        return "RelayLoad{children=" + children + "/" + maxChildren + ", dropRate=" + dropRate + ", saturated=" + saturated + "}";
+    }
+
+}
@@ -27,11 +27,20 @@ import java.util.Map;
  * @author Alex Ormenisan <aaor@sics.se>
  */
 public class Status {
+    public static final int FULL = -1; //Base status number of a full snapshot.
+
     public int statusNr, receivedPings, sentPings;
+    private int baseStatusNr; //Status the node maps are a delta of: only nodes whose state changed since it are listed.
     private Map<NatedAddress, Integer> aliveNodes, suspectedNodes, deadNodes;
+    private int smoothedRtt, rttVariation; //Global round trip time estimate of the node, in milliseconds.
 
     public Status(int statusNr, int receivedPings, int sentPings, Map<NatedAddress, Integer> aliveNodes, Map<NatedAddress, Integer> suspectedNodes, Map<NatedAddress, Integer> deadNodes) {
+        this(statusNr, FULL, receivedPings, sentPings, aliveNodes, suspectedNodes, deadNodes);
+    }
+
+    public Status(int statusNr, int baseStatusNr, int receivedPings, int sentPings, Map<NatedAddress, Integer> aliveNodes, Map<NatedAddress, Integer> suspectedNodes, Map<NatedAddress, Integer> deadNodes) {
         this.statusNr = statusNr;
+        this.baseStatusNr = baseStatusNr;
         this.receivedPings = receivedPings;
         this.sentPings = sentPings;
         this.aliveNodes = aliveNodes;
@@ -47,6 +56,30 @@ public class Status {
         this.statusNr = statusNr;
     }
 
+    public int getBaseStatusNr() {
+        return baseStatusNr;
+    }
+
+    public boolean isFull() {
+        return baseStatusNr == FULL;
+    }
+
+    public int getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    public void setSmoothedRtt(int smoothedRtt) {
+        this.smoothedRtt = smoothedRtt;
+    }
+
+    public int getRttVariation() {
+        return rttVariation;
+    }
+
+    public void setRttVariation(int rttVariation) {
+        this.rttVariation = rttVariation;
+    }
+
     public int getReceivedPings() {
         return receivedPings;
     }
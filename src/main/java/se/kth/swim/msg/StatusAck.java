@@ -0,0 +1,13 @@
+package se.kth.swim.msg;
+
+public class StatusAck {
+    int statusNr;
+
+    public StatusAck(int statusNr) {
+        this.statusNr = statusNr;
+    }
+
+    public int getStatusNr() {
+        return statusNr;
+    }
+}
@@ -0,0 +1,17 @@
+package se.kth.swim.msg.codec;
+
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Looks up the full address of a node from the receiver's own membership, for
+ * messages sent with the compact header.
+ */
+public interface AddressResolver {
+
+    /**
+     * @param id node id of the sender.
+     * @param incarnationCounter incarnation counter of the sender when it sent the message.
+     * @return the address of the node, or null if it is unknown or too stale to answer it.
+     */
+    NatedAddress resolve(int id, int incarnationCounter);
+}
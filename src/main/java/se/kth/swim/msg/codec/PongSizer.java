@@ -0,0 +1,82 @@
+package se.kth.swim.msg.codec;
+
+import se.kth.swim.util.Varint;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Upper bound of the bytes the piggybacked updates add to an encoded pong,
+ * kept as the updates are packed. It follows the parent table of the
+ * message: a parent seen for the first time pays its table entry, and every
+ * parent reference pays an index as wide as the largest index of the table.
+ * When the table grows past a varint width, the indexes already counted and
+ * the table length grow with it, and so do the lengths of the three update
+ * lists of the pong.
+ */
+public class PongSizer {
+
+    private static final int UPDATE_LISTS = 3;
+
+    private final Set<Integer> parents;   //Parent table of the message, by parent id.
+    private int references = 0;           //Parent indexes written, those of the header included.
+    private int updates = 0;
+    private int size = 0;
+
+    /**
+     * @param header the source and destination of the pong, whose parents come first in the parent table.
+     */
+    public PongSizer(NatedAddress... header) {
+        this.parents = new HashSet<Integer>();
+        for (NatedAddress address : header) {
+            for (NatedAddress parent : address.getParents()) {
+                parents.add(parent.getId());
+                references++;
+            }
+        }
+    }
+
+    // Bytes the update would add to the pong, without adding it.
+    public int sizeOf(NatedAddress address, int incarnationCounter) {
+        int newParents = 0;
+        int size = Varint.sizeOf(address.getId()) + Varint.sizeOf(address.getParents().size() << 1) + Varint.sizeOf(incarnationCounter);
+        for (NatedAddress parent : address.getParents()) {
+            if (!parents.contains(parent.getId())) {
+                newParents++;
+                size += Varint.sizeOf(parent.getId());
+            }
+        }
+        int tableSize = parents.size() + newParents;
+        int indexSize = indexSize(tableSize);
+        size += address.getParents().size() * indexSize;
+        //Growth of what was counted before at the narrower width.
+        size += references * (indexSize - indexSize(parents.size()));
+        size += Varint.sizeOf(tableSize) - Varint.sizeOf(parents.size());
+        size += UPDATE_LISTS * (Varint.sizeOf(updates + 1) - Varint.sizeOf(updates));
+        return size;
+    }
+
+    public void add(NatedAddress address, int incarnationCounter) {
+        size += sizeOf(address, incarnationCounter);
+        for (NatedAddress parent : address.getParents()) {
+            parents.add(parent.getId());
+            references++;
+        }
+        updates++;
+    }
+
+    // The suspecter id carried by a suspected node update.
+    public void addSuspecter(int suspecterId) {
+        size += Varint.sizeOf(suspecterId);
+    }
+
+    // Bytes added by the updates so far.
+    public int size() {
+        return size;
+    }
+
+    private static int indexSize(int tableSize) {
+        return Varint.sizeOf(Math.max(0, tableSize - 1));
+    }
+}
@@ -0,0 +1,500 @@
+package se.kth.swim.msg.codec;
+
+import se.kth.swim.msg.*;
+import se.kth.swim.msg.net.*;
+import se.kth.swim.util.Varint;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Binary wire format of the SWIM messages.
+ * <p>
+ * A message is a one byte type tag, a table of the parent ids referenced by the
+ * message and the message body. Addresses are written as a varint node id, a
+ * varint holding the parent count and nat type, and one varint index into the
+ * parent table per parent, so a parent shared by many NATed nodes is written
+ * once. Counters and incarnation numbers are varints as well.
+ * <p>
+ * Like the addresses piggybacked by NodeManager, decoded addresses carry only
+ * the node id, nat type and parents: ip and port are set to 127.0.0.1:12345.
+ * <p>
+ * Replies can use the compact header instead: the tag with its high bit set,
+ * then the parent table, the source id and its incarnation counter. The
+ * destination is the receiver itself and the source is resolved from the
+ * receiver's membership, which knows it since it sent the request.
+ */
+public class SwimCodec {
+
+    public static final byte PING = 1;
+    public static final byte PONG = 2;
+    public static final byte K_INDIRECT_PING = 3;
+    public static final byte K_INDIRECT_PONG = 4;
+    public static final byte ALIVE = 5;
+    public static final byte NATED_PING = 6;
+    public static final byte NATED_PONG = 7;
+    public static final byte STATUS = 8;
+    public static final byte STATUS_ACK = 9;
+    public static final byte K_INDIRECT_NACK = 10;
+    public static final byte BUNDLE = 11;
+
+    private static final byte COMPACT = (byte) 0x80;
+
+    private static final int PORT = 12345;
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    // Network messages: tag, parent table, source, destination and content.
+
+    public static ByteBuffer encode(NetMsg<?> msg) {
+        Writer writer = new Writer();
+        writer.address(msg.getHeader().getSource());
+        writer.address(msg.getHeader().getDestination());
+        byte tag = writer.content(msg.getContent());
+        return writer.finish(tag);
+    }
+
+    public static NetMsg decode(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        if ((tag & COMPACT) != 0) {
+            throw new IllegalArgumentException("compact message needs the receiver and an address resolver");
+        }
+        Reader reader = new Reader(buffer);
+        NatedAddress src = reader.address();
+        NatedAddress dst = reader.address();
+        return message(tag, src, dst, reader);
+    }
+
+    private static NetMsg message(byte tag, NatedAddress src, NatedAddress dst, Reader reader) {
+        //The messages of a bundle share its source and destination, each is written as its tag and content.
+        if (tag == BUNDLE) {
+            int count = reader.varint();
+            List<NetMsg> messages = new ArrayList<NetMsg>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(message((byte) reader.varint(), src, dst, reader));
+            }
+            return new NetBundle(src, dst, messages);
+        }
+
+        Object content = reader.content(tag);
+        switch (tag) {
+            case PING:
+                Ping ping = (Ping) content;
+                return new NetPing(src, dst, ping.getPingNr(), ping.getIncarnationCounter());
+            case PONG:
+                return new NetPong(src, dst, (Pong) content);
+            case K_INDIRECT_PING:
+                KIndirectPing kPing = (KIndirectPing) content;
+                return new NetKIndirectPing(src, dst, kPing.getAddressToPing(), kPing.getPingNr());
+            case K_INDIRECT_PONG:
+                KIndirectPong kPong = (KIndirectPong) content;
+                return new NetKIndirectPong(src, dst, kPong.getAddress(), kPong.getIncarnationCounter(), kPong.getPingNr());
+            case ALIVE:
+                return new NetAliveMsg(src, dst, ((AliveMsg) content).getIncarnationCounter());
+            case NATED_PING:
+                return new NetNATedPing(src, dst, ((NATedPing) content).getPingNr());
+            case NATED_PONG:
+                return new NetNATedPong(src, dst, ((NATedPong) content).getPingNr());
+            case STATUS:
+                return new NetStatusMsg(src, dst, (Status) content);
+            case STATUS_ACK:
+                return new NetStatusAck(src, dst, ((StatusAck) content).getStatusNr());
+            case K_INDIRECT_NACK:
+                KIndirectNack kNack = (KIndirectNack) content;
+                return new NetKIndirectNack(src, dst, kNack.getAddress(), kNack.getPingNr());
+            default:
+                throw new IllegalArgumentException("unknown message type " + tag);
+        }
+    }
+
+    public static int sizeOf(NetMsg<?> msg) {
+        return encode(msg).remaining();
+    }
+
+    // Compact messages: tag with the compact bit, parent table, source id, source incarnation and content.
+
+    /**
+     * @param incarnationCounter incarnation counter of the sender, checked by the
+     * receiver against the one it knows before trusting the resolved address.
+     */
+    public static ByteBuffer encodeCompact(NetMsg<?> msg, int incarnationCounter) {
+        Writer writer = new Writer();
+        writer.varint(msg.getHeader().getSource().getId());
+        writer.varint(incarnationCounter);
+        byte tag = writer.content(msg.getContent());
+        return writer.finish((byte) (tag | COMPACT));
+    }
+
+    /**
+     * Decodes a message in either header format.
+     *
+     * @param self the receiving node, destination of compact messages.
+     * @throws IllegalArgumentException if the source of a compact message cannot be resolved.
+     */
+    public static NetMsg decode(ByteBuffer buffer, NatedAddress self, AddressResolver resolver) {
+        byte tag = buffer.get(buffer.position());
+        if ((tag & COMPACT) == 0) {
+            return decode(buffer);
+        }
+        buffer.get();
+        Reader reader = new Reader(buffer);
+        int id = reader.varint();
+        NatedAddress src = resolver.resolve(id, reader.varint());
+        if (src == null) {
+            throw new IllegalArgumentException("compact message from unknown node " + id);
+        }
+        return message((byte) (tag & ~COMPACT), src, self, reader);
+    }
+
+    public static int sizeOfCompact(NetMsg<?> msg, int incarnationCounter) {
+        return encodeCompact(msg, incarnationCounter).remaining();
+    }
+
+    // Message contents on their own: tag, parent table and content.
+
+    public static ByteBuffer encodeContent(Object content) {
+        Writer writer = new Writer();
+        byte tag = writer.content(content);
+        return writer.finish(tag);
+    }
+
+    public static Object decodeContent(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        return new Reader(buffer).content(tag);
+    }
+
+    public static int sizeOfContent(Object content) {
+        return encodeContent(content).remaining();
+    }
+
+    /**
+     * Upper bound of {@link #sizeOf(NetMsg)} worked out from the message
+     * fields, without encoding it: every parent is counted with a parent table
+     * entry of its own, as if no two addresses shared a parent.
+     */
+    public static int maxSizeOf(NetMsg<?> msg) {
+        SizeCounter counter = new SizeCounter();
+        counter.address(msg.getHeader().getSource());
+        counter.address(msg.getHeader().getDestination());
+        counter.content(msg.getContent());
+        return counter.maxSize();
+    }
+
+    // Upper bound of sizeOfContent, see maxSizeOf.
+    public static int maxSizeOfContent(Object content) {
+        SizeCounter counter = new SizeCounter();
+        counter.content(content);
+        return counter.maxSize();
+    }
+
+    /**
+     * Content layout shared by the Writer and the SizeCounter, so sizes are
+     * always worked out from the fields actually written.
+     */
+    private abstract static class Output {
+
+        abstract void varint(int value);
+
+        abstract void address(NatedAddress address);
+
+        // A message of a bundle: its tag and its content.
+        abstract void message(NetMsg<?> msg);
+
+        void nodes(Map<NatedAddress, Integer> nodes) {
+            varint(nodes.size());
+            for (Map.Entry<NatedAddress, Integer> node : nodes.entrySet()) {
+                address(node.getKey());
+                varint(node.getValue());
+            }
+        }
+
+        // Gossiped suspicions: the suspected node, its incarnation and the id of the node that raised the suspicion.
+        void suspectedNodes(Map<NatedAddress, Integer> nodes, Map<NatedAddress, Integer> suspecters) {
+            varint(nodes.size());
+            for (Map.Entry<NatedAddress, Integer> node : nodes.entrySet()) {
+                address(node.getKey());
+                varint(node.getValue());
+                varint(suspecters.get(node.getKey()));
+            }
+        }
+
+        byte content(Object content) {
+            if (content instanceof Ping) {
+                Ping ping = (Ping) content;
+                varint(ping.getPingNr());
+                varint(ping.getIncarnationCounter());
+                return PING;
+            }
+            else if (content instanceof Pong) {
+                Pong pong = (Pong) content;
+                varint(pong.getPingNr());
+                varint(pong.getIncarnationCounter());
+                nodes(pong.getNewNodes());
+                suspectedNodes(pong.getSuspectedNodes(), pong.getSuspecters());
+                nodes(pong.getDeadNodes());
+                return PONG;
+            }
+            else if (content instanceof KIndirectPing) {
+                KIndirectPing kPing = (KIndirectPing) content;
+                address(kPing.getAddressToPing());
+                varint(kPing.getPingNr());
+                return K_INDIRECT_PING;
+            }
+            else if (content instanceof KIndirectPong) {
+                KIndirectPong kPong = (KIndirectPong) content;
+                address(kPong.getAddress());
+                varint(kPong.getIncarnationCounter());
+                varint(kPong.getPingNr());
+                return K_INDIRECT_PONG;
+            }
+            else if (content instanceof AliveMsg) {
+                varint(((AliveMsg) content).getIncarnationCounter());
+                return ALIVE;
+            }
+            else if (content instanceof NATedPing) {
+                varint(((NATedPing) content).getPingNr());
+                return NATED_PING;
+            }
+            else if (content instanceof NATedPong) {
+                varint(((NATedPong) content).getPingNr());
+                return NATED_PONG;
+            }
+            else if (content instanceof Status) {
+                Status status = (Status) content;
+                varint(status.getStatusNr());
+                varint(status.getBaseStatusNr() - Status.FULL);
+                varint(status.getReceivedPings());
+                varint(status.getSentPings());
+                varint(status.getSmoothedRtt());
+                varint(status.getRttVariation());
+                nodes(status.getAliveNodes());
+                nodes(status.getSuspectedNodes());
+                nodes(status.getDeadNodes());
+                return STATUS;
+            }
+            else if (content instanceof StatusAck) {
+                varint(((StatusAck) content).getStatusNr());
+                return STATUS_ACK;
+            }
+            else if (content instanceof KIndirectNack) {
+                KIndirectNack kNack = (KIndirectNack) content;
+                address(kNack.getAddress());
+                varint(kNack.getPingNr());
+                return K_INDIRECT_NACK;
+            }
+            else if (content instanceof Bundle) {
+                List<NetMsg> messages = ((Bundle) content).getMessages();
+                varint(messages.size());
+                for (NetMsg msg : messages) {
+                    message(msg);
+                }
+                return BUNDLE;
+            }
+            throw new IllegalArgumentException("no encoding for " + content.getClass().getName());
+        }
+    }
+
+    private static class Writer extends Output {
+
+        private final Map<Integer, Integer> parentIndexes = new LinkedHashMap<Integer, Integer>();
+        private ByteBuffer body = ByteBuffer.allocate(256);
+
+        private void ensure(int bytes) {
+            if (body.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + bytes));
+                body.flip();
+                larger.put(body);
+                body = larger;
+            }
+        }
+
+        @Override
+        void varint(int value) {
+            ensure(Varint.MAX_SIZE);
+            Varint.write(body, value);
+        }
+
+        @Override
+        void address(NatedAddress address) {
+            Set<NatedAddress> parents = address.getParents();
+            varint(address.getId());
+            varint((parents.size() << 1) | (address.isOpen() ? 0 : 1));
+            for (NatedAddress parent : parents) {
+                Integer index = parentIndexes.get(parent.getId());
+                if (index == null) {
+                    index = parentIndexes.size();
+                    parentIndexes.put(parent.getId(), index);
+                }
+                varint(index);
+            }
+        }
+
+        @Override
+        void message(NetMsg<?> msg) {
+            //The tag of a message is only known once its content is written.
+            ensure(1);
+            int tagPosition = body.position();
+            body.put((byte) 0);
+            byte tag = content(msg.getContent());
+            body.put(tagPosition, tag);
+        }
+
+        ByteBuffer finish(byte tag) {
+            ByteBuffer out = ByteBuffer.allocate(1 + Varint.MAX_SIZE * (1 + parentIndexes.size()) + body.position());
+            out.put(tag);
+            Varint.write(out, parentIndexes.size());
+            for (Integer parentId : parentIndexes.keySet()) {
+                Varint.write(out, parentId);
+            }
+            body.flip();
+            out.put(body);
+            out.flip();
+            return out;
+        }
+    }
+
+    private static class SizeCounter extends Output {
+
+        private int size = 0;
+        private int parentRefs = 0;
+        private int parentIdSizes = 0;
+
+        @Override
+        void varint(int value) {
+            size += Varint.sizeOf(value);
+        }
+
+        @Override
+        void address(NatedAddress address) {
+            Set<NatedAddress> parents = address.getParents();
+            varint(address.getId());
+            varint((parents.size() << 1) | (address.isOpen() ? 0 : 1));
+            for (NatedAddress parent : parents) {
+                parentRefs++;
+                parentIdSizes += Varint.sizeOf(parent.getId());
+            }
+        }
+
+        @Override
+        void message(NetMsg<?> msg) {
+            size++;
+            content(msg.getContent());
+        }
+
+        // Tag, a parent table of at most parentRefs entries, the fields and one parent index per reference.
+        int maxSize() {
+            return 1 + Varint.sizeOf(parentRefs) + parentIdSizes + size + parentRefs * Varint.sizeOf(Math.max(0, parentRefs - 1));
+        }
+    }
+
+    private static class Reader {
+
+        private final ByteBuffer buffer;
+        private final NatedAddress[] parents;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.parents = new NatedAddress[Varint.read(buffer)];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = new BasicNatedAddress(new BasicAddress(LOCALHOST, PORT, Varint.read(buffer)));
+            }
+        }
+
+        int varint() {
+            return Varint.read(buffer);
+        }
+
+        NatedAddress address() {
+            int id = varint();
+            int flags = varint();
+            Set<NatedAddress> addressParents = new HashSet<NatedAddress>();
+            for (int i = 0; i < flags >>> 1; i++) {
+                addressParents.add(parents[varint()]);
+            }
+            return new BasicNatedAddress(new BasicAddress(LOCALHOST, PORT, id), (flags & 1) == 0 ? NatType.OPEN : NatType.NAT, addressParents);
+        }
+
+        Map<NatedAddress, Integer> nodes() {
+            int size = varint();
+            Map<NatedAddress, Integer> nodes = new HashMap<NatedAddress, Integer>();
+            for (int i = 0; i < size; i++) {
+                NatedAddress address = address();
+                nodes.put(address, varint());
+            }
+            return nodes;
+        }
+
+        Object content(byte tag) {
+            switch (tag) {
+                case PING:
+                    return new Ping(varint(), varint());
+                case PONG: {
+                    int pingNr = varint();
+                    int incarnationCounter = varint();
+                    Map<NatedAddress, Integer> newNodes = nodes();
+                    Map<NatedAddress, Integer> suspectedNodes = new HashMap<NatedAddress, Integer>();
+                    Map<NatedAddress, Integer> suspecters = new HashMap<NatedAddress, Integer>();
+                    int suspicions = varint();
+                    for (int i = 0; i < suspicions; i++) {
+                        NatedAddress address = address();
+                        suspectedNodes.put(address, varint());
+                        suspecters.put(address, varint());
+                    }
+                    return new Pong(newNodes, suspectedNodes, suspecters, nodes(), pingNr, incarnationCounter);
+                }
+                case K_INDIRECT_PING: {
+                    NatedAddress addressToPing = address();
+                    return new KIndirectPing(addressToPing, varint());
+                }
+                case K_INDIRECT_PONG: {
+                    NatedAddress address = address();
+                    int incarnationCounter = varint();
+                    return new KIndirectPong(address, incarnationCounter, varint());
+                }
+                case ALIVE:
+                    return new AliveMsg(varint());
+                case NATED_PING:
+                    return new NATedPing(varint());
+                case NATED_PONG:
+                    return new NATedPong(varint());
+                case STATUS: {
+                    int statusNr = varint();
+                    int baseStatusNr = varint() + Status.FULL;
+                    int receivedPings = varint();
+                    int sentPings = varint();
+                    int smoothedRtt = varint();
+                    int rttVariation = varint();
+                    Map<NatedAddress, Integer> aliveNodes = nodes();
+                    Map<NatedAddress, Integer> suspectedNodes = nodes();
+                    Status status = new Status(statusNr, baseStatusNr, receivedPings, sentPings, aliveNodes, suspectedNodes, nodes());
+                    status.setSmoothedRtt(smoothedRtt);
+                    status.setRttVariation(rttVariation);
+                    return status;
+                }
+                case STATUS_ACK:
+                    return new StatusAck(varint());
+                case K_INDIRECT_NACK: {
+                    NatedAddress address = address();
+                    return new KIndirectNack(address, varint());
+                }
+                case BUNDLE:
+                    throw new IllegalArgumentException("a bundle is only decoded along with its source and destination");
+                default:
+                    throw new IllegalArgumentException("unknown message type " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package se.kth.swim.msg.control;
+
+import se.kth.swim.SwimConfig;
+import se.sics.kompics.KompicsEvent;
+
+/**
+ * Replaces the configuration of a running SWIM component. Pings and timeouts
+ * already scheduled keep the values they were scheduled with.
+ */
+public class SwimConfigUpdate implements KompicsEvent {
+
+    private final SwimConfig config;
+
+    public SwimConfigUpdate(SwimConfig config) {
+        this.config = config;
+    }
+
+    public SwimConfig getConfig() {
+        return config;
+    }
+
+}
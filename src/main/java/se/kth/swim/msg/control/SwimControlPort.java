@@ -0,0 +1,9 @@
+package se.kth.swim.msg.control;
+
+import se.sics.kompics.PortType;
+
+public class SwimControlPort extends PortType {
+    {
+        request(SwimConfigUpdate.class);
+    }
+}
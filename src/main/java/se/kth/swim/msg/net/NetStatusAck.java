@@ -0,0 +1,22 @@
+package se.kth.swim.msg.net;
+
+import se.kth.swim.msg.StatusAck;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+public class NetStatusAck extends NetMsg<StatusAck> {
+
+    public NetStatusAck(NatedAddress src, NatedAddress dst, int statusNr) {
+        super(src, dst, new StatusAck(statusNr));
+    }
+
+    private NetStatusAck(Header<NatedAddress> header, StatusAck content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetStatusAck(newHeader, getContent());
+    }
+
+}
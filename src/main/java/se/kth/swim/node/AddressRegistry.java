@@ -0,0 +1,69 @@
+package se.kth.swim.node;
+
+import se.kth.swim.util.IntObjectMap;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Interned wire-ready addresses of the nodes we gossip about. Each node's
+ * address is rebuilt (127.0.0.1:12345, node id, nat type and an immutable copy
+ * of its parents) only when its incarnation counter or parents change, and is
+ * shared by every pong, status and membership copy in between.
+ */
+public class AddressRegistry {
+
+    private static final int PORT = 12345;
+    private static final InetAddress LOCALHOST;
+
+    static {
+        try {
+            LOCALHOST = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private final IntObjectMap<Interned> addresses;
+
+    public AddressRegistry() {
+        this.addresses = new IntObjectMap<Interned>();
+    }
+
+    public NatedAddress get(NatedAddress address, int incarnationCounter) {
+        Interned interned = addresses.get(address.getId());
+        if (interned == null || interned.incarnationCounter != incarnationCounter || !sameParents(interned.address, address)) {
+            interned = new Interned(build(address), incarnationCounter);
+            addresses.put(address.getId(), interned);
+        }
+        return interned.address;
+    }
+
+    //Addresses received from other nodes can be their live self address, so parents are compared as well.
+    private static boolean sameParents(NatedAddress interned, NatedAddress address) {
+        Set<NatedAddress> parents = address.getParents();
+        return interned.getNatType() == address.getNatType() && interned.getParents().size() == parents.size() && interned.getParents().containsAll(parents);
+    }
+
+    private static NatedAddress build(NatedAddress address) {
+        Set<NatedAddress> parents = Collections.unmodifiableSet(new HashSet<NatedAddress>(address.getParents()));
+        return new BasicNatedAddress(new BasicAddress(LOCALHOST, PORT, address.getId()), address.getNatType(), parents);
+    }
+
+    private static class Interned {
+
+        final NatedAddress address;
+        final int incarnationCounter;
+
+        Interned(NatedAddress address, int incarnationCounter) {
+            this.address = address;
+            this.incarnationCounter = incarnationCounter;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package se.kth.swim.node;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Piggyback buffer ordered by send count. Entries are kept in one bucket per
+ * send count, each bucket being a FIFO linked list, so walking the least
+ * gossiped updates first costs O(k) plus the number of buckets (bounded by the
+ * retransmission limit) instead of sorting the whole buffer on every pong.
+ */
+public class DisseminationQueue {
+
+    private final Map<Integer, NodeDetails> entries;   //Queued entry of every node id.
+    private NodeDetails[] heads;
+    private NodeDetails[] tails;
+
+    public DisseminationQueue() {
+        this.entries = new HashMap<Integer, NodeDetails>();
+        this.heads = new NodeDetails[16];
+        this.tails = new NodeDetails[16];
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public NodeDetails get(int id) {
+        return entries.get(id);
+    }
+
+    /**
+     * Queues the entry with its current send count, replacing any entry queued
+     * for the same node.
+     */
+    public void put(NodeDetails nodeInfo) {
+        NodeDetails old = entries.put(nodeInfo.getAddress().getId(), nodeInfo);
+        if (old != null) {
+            unlink(old);
+        }
+        link(nodeInfo);
+    }
+
+    /**
+     * Queues the entry ahead of every other entry with the same send count,
+     * so the next pong carries it before anything else of the same age.
+     */
+    public void putFirst(NodeDetails nodeInfo) {
+        NodeDetails old = entries.put(nodeInfo.getAddress().getId(), nodeInfo);
+        if (old != null) {
+            unlink(old);
+        }
+        link(nodeInfo);
+        if (nodeInfo.prev != null) {
+            //Move it from the tail to the head of its bucket.
+            int bucket = nodeInfo.getSendCounter();
+            unlink(nodeInfo);
+            nodeInfo.next = heads[bucket];
+            heads[bucket].prev = nodeInfo;
+            heads[bucket] = nodeInfo;
+        }
+    }
+
+    public NodeDetails remove(int id) {
+        NodeDetails nodeInfo = entries.remove(id);
+        if (nodeInfo != null) {
+            unlink(nodeInfo);
+        }
+        return nodeInfo;
+    }
+
+    /**
+     * @return the least gossiped entry, or null if the queue is empty.
+     */
+    public NodeDetails first() {
+        return firstFrom(0);
+    }
+
+    /**
+     * @return the entry following the given one in send count order, or null.
+     */
+    public NodeDetails next(NodeDetails nodeInfo) {
+        if (nodeInfo.next != null) {
+            return nodeInfo.next;
+        }
+        return firstFrom(nodeInfo.getSendCounter() + 1);
+    }
+
+    private NodeDetails firstFrom(int bucket) {
+        for (int i = bucket; i < heads.length; i++) {
+            if (heads[i] != null) {
+                return heads[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Increments the send count of the given entries, dropping those that were
+     * sent more than retransmitLimit times.
+     */
+    public void markSent(List<NodeDetails> sent, double retransmitLimit) {
+        for (NodeDetails nodeInfo : sent) {
+            if (entries.get(nodeInfo.getAddress().getId()) != nodeInfo) {
+                continue;
+            }
+            unlink(nodeInfo);
+            nodeInfo.setSendCounter(nodeInfo.getSendCounter() + 1);
+            if (nodeInfo.getSendCounter() > retransmitLimit) {
+                entries.remove(nodeInfo.getAddress().getId());
+            }
+            else {
+                link(nodeInfo);
+            }
+        }
+    }
+
+    private void link(NodeDetails nodeInfo) {
+        int bucket = nodeInfo.getSendCounter();
+        if (bucket >= heads.length) {
+            int length = Math.max(heads.length * 2, bucket + 1);
+            NodeDetails[] newHeads = new NodeDetails[length];
+            NodeDetails[] newTails = new NodeDetails[length];
+            System.arraycopy(heads, 0, newHeads, 0, heads.length);
+            System.arraycopy(tails, 0, newTails, 0, tails.length);
+            heads = newHeads;
+            tails = newTails;
+        }
+        nodeInfo.next = null;
+        nodeInfo.prev = tails[bucket];
+        if (tails[bucket] == null) {
+            heads[bucket] = nodeInfo;
+        }
+        else {
+            tails[bucket].next = nodeInfo;
+        }
+        tails[bucket] = nodeInfo;
+    }
+
+    private void unlink(NodeDetails nodeInfo) {
+        int bucket = nodeInfo.getSendCounter();
+        if (nodeInfo.prev == null) {
+            heads[bucket] = nodeInfo.next;
+        }
+        else {
+            nodeInfo.prev.next = nodeInfo.next;
+        }
+        if (nodeInfo.next == null) {
+            tails[bucket] = nodeInfo.prev;
+        }
+        else {
+            nodeInfo.next.prev = nodeInfo.prev;
+        }
+        nodeInfo.prev = null;
+        nodeInfo.next = null;
+    }
+}
@@ -0,0 +1,52 @@
+package se.kth.swim.node;
+
+/**
+ * Local health multiplier of Lifeguard. The score rises when this node shows
+ * signs of being slow itself (late pongs, refuted suspicions, missed nacks) and
+ * falls with every probe answered in time. Probe periods and timeouts are
+ * stretched by score + 1, so an overloaded node suspects others less eagerly.
+ */
+public class LocalHealth {
+
+    private int maxScore;
+    private int score = 0;
+
+    public LocalHealth(int maxScore) {
+        this.maxScore = maxScore;
+    }
+
+    /**
+     * @return true if the score changed.
+     */
+    public boolean increase() {
+        if (score >= maxScore) {
+            return false;
+        }
+        score++;
+        return true;
+    }
+
+    /**
+     * @return true if the score changed.
+     */
+    public boolean decrease() {
+        if (score <= 0) {
+            return false;
+        }
+        score--;
+        return true;
+    }
+
+    public void setMaxScore(int maxScore) {
+        this.maxScore = maxScore;
+        score = Math.min(score, maxScore);
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public long scale(long timeout) {
+        return timeout * (score + 1);
+    }
+}
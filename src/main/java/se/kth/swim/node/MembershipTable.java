@@ -0,0 +1,288 @@
+package se.kth.swim.node;
+
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.Arrays;
+
+/**
+ * Membership table keyed by the int node id. Every member occupies one slot of
+ * a set of parallel open-addressing arrays holding its state, incarnation
+ * counter and address, so a lookup is a single probe sequence over an int array.
+ * Members are never removed, a dead member keeps its slot in state DEAD.
+ * <p>
+ * Every change gets the next version number and is appended to a change log,
+ * so the members changed since a given version are found without walking or
+ * copying the table.
+ */
+public class MembershipTable {
+
+    public static final byte FREE = 0;
+    public static final byte ALIVE = 1;
+    public static final byte SUSPECTED = 2;
+    public static final byte DEAD = 3;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int[] ids;
+    private byte[] states;
+    private int[] incarnations;
+    private NatedAddress[] addresses;
+    private int[] changedAt;    //Version of the last change of each member, 0 for none.
+    private int mask;
+
+    private int size;
+    private int suspectedCount;
+    private int deadCount;
+
+    private int version = 0;
+    private int[] changedIds = new int[16];    //Change log: changed member and version of the change, in version order.
+    private int[] changeVersions = new int[16];
+    private int changeStart = 0;
+    private int changeEnd = 0;
+
+    public MembershipTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MembershipTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        states = new byte[capacity];
+        incarnations = new int[capacity];
+        addresses = new NatedAddress[capacity];
+        changedAt = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot holding the given id, or -1 if the id is not a member.
+     */
+    public int slotOf(int id) {
+        int slot = hash(id) & mask;
+        while (states[slot] != FREE) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(int id) {
+        return slotOf(id) >= 0;
+    }
+
+    public byte getState(int id) {
+        int slot = slotOf(id);
+        return slot < 0 ? FREE : states[slot];
+    }
+
+    public int getIncarnation(int id) {
+        int slot = slotOf(id);
+        return slot < 0 ? 0 : incarnations[slot];
+    }
+
+    public NatedAddress getAddress(int id) {
+        int slot = slotOf(id);
+        return slot < 0 ? null : addresses[slot];
+    }
+
+    /**
+     * Inserts the member or overwrites its state, incarnation and address.
+     */
+    public void put(NatedAddress address, byte state, int incarnation) {
+        if (state == FREE) {
+            throw new IllegalArgumentException("cannot put a member in state FREE");
+        }
+        int id = address.getId();
+        int slot = slotOf(id);
+        if (slot < 0) {
+            if ((size + 1) * 2 > ids.length) {
+                rehash(ids.length << 1);
+            }
+            slot = hash(id) & mask;
+            while (states[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            size++;
+        }
+        else {
+            count(states[slot], -1);
+        }
+        states[slot] = state;
+        incarnations[slot] = incarnation;
+        addresses[slot] = address;
+        count(state, 1);
+        changed(slot);
+    }
+
+    /**
+     * Changes the state of an existing member, keeping its incarnation and address.
+     *
+     * @return false if the id is not a member.
+     */
+    public boolean setState(int id, byte state) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        count(states[slot], -1);
+        states[slot] = state;
+        count(state, 1);
+        changed(slot);
+        return true;
+    }
+
+    private void count(byte state, int delta) {
+        if (state == SUSPECTED) {
+            suspectedCount += delta;
+        }
+        else if (state == DEAD) {
+            deadCount += delta;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldIds = ids;
+        byte[] oldStates = states;
+        int[] oldIncarnations = incarnations;
+        NatedAddress[] oldAddresses = addresses;
+        int[] oldChangedAt = changedAt;
+        allocate(newCapacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldStates[i] != FREE) {
+                int slot = hash(oldIds[i]) & mask;
+                while (states[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[i];
+                states[slot] = oldStates[i];
+                incarnations[slot] = oldIncarnations[i];
+                addresses[slot] = oldAddresses[i];
+                changedAt[slot] = oldChangedAt[i];
+            }
+        }
+    }
+
+    private void changed(int slot) {
+        version++;
+        changedAt[slot] = version;
+        if (changeEnd == changedIds.length) {
+            compactChanges();
+        }
+        changedIds[changeEnd] = ids[slot];
+        changeVersions[changeEnd] = version;
+        changeEnd++;
+    }
+
+    // Drops the log entries of members changed again later, and grows the log if it is still mostly full.
+    private void compactChanges() {
+        int end = 0;
+        for (int i = changeStart; i < changeEnd; i++) {
+            int slot = slotOf(changedIds[i]);
+            if (changedAt[slot] == changeVersions[i]) {
+                changedIds[end] = changedIds[i];
+                changeVersions[end] = changeVersions[i];
+                end++;
+            }
+        }
+        changeStart = 0;
+        changeEnd = end;
+        if (changeEnd * 2 > changedIds.length) {
+            int[] newIds = new int[changedIds.length * 2];
+            int[] newVersions = new int[changedIds.length * 2];
+            System.arraycopy(changedIds, 0, newIds, 0, changeEnd);
+            System.arraycopy(changeVersions, 0, newVersions, 0, changeEnd);
+            changedIds = newIds;
+            changeVersions = newVersions;
+        }
+    }
+
+    /**
+     * @return version of the last change, later changes have higher versions.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * @return ids of the members changed after the given version, each once.
+     */
+    public int[] changedSince(int since) {
+        int[] changed = new int[changeEnd - changeStart];
+        int count = 0;
+        for (int i = changeStart; i < changeEnd; i++) {
+            //Skip the entries overwritten by a later change of the same member, it is listed there.
+            if (changeVersions[i] > since && changedAt[slotOf(changedIds[i])] == changeVersions[i]) {
+                changed[count++] = changedIds[i];
+            }
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    /**
+     * Forgets the changes up to the given version, no longer asked for.
+     */
+    public void trimChanges(int upTo) {
+        while (changeStart < changeEnd && changeVersions[changeStart] <= upTo) {
+            changeStart++;
+        }
+    }
+
+    /**
+     * @return number of members, in any state.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of members not declared dead (alive and suspected).
+     */
+    public int aliveCount() {
+        return size - deadCount;
+    }
+
+    public int suspectedCount() {
+        return suspectedCount;
+    }
+
+    public int deadCount() {
+        return deadCount;
+    }
+
+    // Slot level access used to iterate over the table without allocating.
+    public int capacity() {
+        return ids.length;
+    }
+
+    public byte stateAt(int slot) {
+        return states[slot];
+    }
+
+    public int idAt(int slot) {
+        return ids[slot];
+    }
+
+    public int incarnationAt(int slot) {
+        return incarnations[slot];
+    }
+
+    public NatedAddress addressAt(int slot) {
+        return addresses[slot];
+    }
+
+    public static boolean isAlive(byte state) {
+        return state == ALIVE || state == SUSPECTED;
+    }
+}
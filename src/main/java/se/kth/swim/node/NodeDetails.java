@@ -13,6 +13,10 @@ public class NodeDetails implements Serializable {
     private int sendCounter;
     private int incarnationCounter;
     private Type type;
+    private int suspecterId;    //Node that raised the suspicion, for SUSPECTED entries.
+
+    //Links of the send count bucket this entry is queued in, managed by DisseminationQueue. Local to the queue, never serialized.
+    transient NodeDetails prev, next;
 
     public NodeDetails(NatedAddress address, int incarnationCounter, Type type) {
         this.address = address;
@@ -21,6 +25,11 @@ public class NodeDetails implements Serializable {
         this.type = type;
     }
 
+    public NodeDetails(NatedAddress address, int incarnationCounter, int suspecterId) {
+        this(address, incarnationCounter, Type.SUSPECTED);
+        this.suspecterId = suspecterId;
+    }
+
     public NatedAddress getAddress() {
         return address;
     }
@@ -53,6 +62,10 @@ public class NodeDetails implements Serializable {
         this.type = type;
     }
 
+    public int getSuspecterId() {
+        return suspecterId;
+    }
+
     public boolean isNew() {
         return type == Type.NEW;
     }
@@ -1,190 +1,200 @@
 package se.kth.swim.node;
 
 import se.kth.swim.SwimComp;
+import se.kth.swim.SwimConfig;
 import se.kth.swim.msg.Pong;
-import se.sics.kompics.network.Address;
+import se.kth.swim.msg.Status;
+import se.kth.swim.msg.codec.AddressResolver;
+import se.kth.swim.msg.codec.PongSizer;
+import se.kth.swim.util.Varint;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
-import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
-import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.*;
 
 
-public class NodeManager {
+public class NodeManager implements AddressResolver {
 
     private NatedAddress selfAddress;
     private Random rand;
-    private Map<Address, Integer> aliveNodes, suspectedNodes, deadNodes; //Maps containing our nodes. Key is address, value is incarnation counter.
-    private Map<Address, NatedAddress> addressMapping;    //Keeps the mapping between Address and NatedAddress.
-    private Map<Address, NodeDetails> sendBuffer;   //Sendbuffer holding the recent node changes that are to be piggybacked.
-    private List<Address> pingList;  
-    private int pingIndex;    
+    private SwimConfig config;
+    private MembershipTable members;   //Alive, suspected and dead nodes keyed by node id, with their incarnation counter and address.
+    private AddressRegistry addresses;   //Wire-ready copies of the addresses we send to other nodes.
+    private DisseminationQueue sendBuffer;   //Sendbuffer holding the recent node changes that are to be piggybacked, least sent first.
+    private Map<Integer, Integer> unackedVersions;   //Membership version reported in each status not yet acknowledged by the aggregator.
+    private int ackedVersion;   //Membership version reported in the last acknowledged status, base of delta statuses.
+    private int ackedStatusNr = Status.FULL;
+    private ProbeList probeList;    //Members not declared dead, in the order they are pinged.
+
+    private static final int MIN_UPDATE_SIZE = 3; //Smallest encoded update: one byte id, nat type and incarnation.
+    private static final int MAX_MISFITS = 8; //Updates skipped for not fitting in a pong before it is considered full.
     
     public NodeManager(NatedAddress selfAddress, long seed) {
+        this(selfAddress, seed, new SwimConfig());
+    }
+
+    public NodeManager(NatedAddress selfAddress, long seed, SwimConfig config) {
         
         this.selfAddress = selfAddress;
         this.rand = new Random(seed);
+        this.config = config;
+
+        members = new MembershipTable();
+        addresses = new AddressRegistry();
+        sendBuffer = new DisseminationQueue();
+        unackedVersions = new LinkedHashMap<Integer, Integer>();
+        probeList = new ProbeList(rand);
+    }
+
+    public void setConfig(SwimConfig config) {
+        this.config = config;
+    }
 
-        aliveNodes = new HashMap<Address, Integer>();
-        addressMapping = new HashMap<Address, NatedAddress>();
-        suspectedNodes = new HashMap<Address, Integer>();
-        deadNodes = new HashMap<Address, Integer>();
-        sendBuffer = new HashMap<Address, NodeDetails>();
-        pingList = new ArrayList<Address>();
+    private boolean isSelf(NatedAddress address) {
+        return address.getId().intValue() == selfAddress.getId().intValue();
     }
 
     // Adding a node to alive list and considering incarnation counter 
    
     public void addAlive(NatedAddress address, int incarnationCounter) {
   
-        if (address.getBaseAdr().equals(selfAddress.getBaseAdr())) {
+        if (isSelf(address)) {
             return;
         }
 
-        if (aliveNodes.containsKey(address.getBaseAdr())) {
+        int id = address.getId();
+        byte state = members.getState(id);
+        if (MembershipTable.isAlive(state)) {
             //If incarnation counter is lower, this is newer, update info.
-            if (aliveNodes.get(address.getBaseAdr()) < incarnationCounter) {
-                aliveNodes.put(address.getBaseAdr(), incarnationCounter);
-                addressMapping.put(address.getBaseAdr(), address);
-
-                //If node reported alive is suspected by us, remove it from suspected list.
-                if (suspectedNodes.containsKey(address.getBaseAdr())) {
-                    suspectedNodes.remove(address.getBaseAdr());
-                }
-
-                //Also update counter in send queue
-                if (sendBuffer.containsKey(address.getBaseAdr())) {
-                    NodeDetails nodeInfo = sendBuffer.get(address.getBaseAdr());
-                    nodeInfo.setIncarnationCounter(incarnationCounter);
-                    nodeInfo.setType(NodeDetails.Type.NEW);
-                    sendBuffer.put(address.getBaseAdr(), nodeInfo);
-                }
+            //If node reported alive is suspected by us, it is no longer suspected.
+            if (members.getIncarnation(id) < incarnationCounter) {
+                members.put(address, MembershipTable.ALIVE, incarnationCounter);
+                refreshSendBuffer(id, incarnationCounter);
             }
         }
         //If the node is not already in our alive list, but not declared dead, add it to alive list.
-        else if (!deadNodes.containsKey(address.getBaseAdr())) {
-            aliveNodes.put(address.getBaseAdr(), incarnationCounter);
-            addressMapping.put(address.getBaseAdr(), address);
+        else if (state != MembershipTable.DEAD) {
+            members.put(address, MembershipTable.ALIVE, incarnationCounter);
 
            
-            sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.NEW));
+            sendBuffer.put(new NodeDetails(address, incarnationCounter, NodeDetails.Type.NEW));
 
             
-            addToPingList(address);
+            probeList.add(id);
         }
     }
 
    
     public void copyAlive(NatedAddress address, int incarnationCounter) {
       
-        if (address.getBaseAdr().equals(selfAddress.getBaseAdr())) {
+        if (isSelf(address)) {
             return;
         }
 
-        if (aliveNodes.containsKey(address.getBaseAdr())) {
-            if (aliveNodes.get(address.getBaseAdr()) <= incarnationCounter) {
-                aliveNodes.put(address.getBaseAdr(), incarnationCounter);
-                addressMapping.put(address.getBaseAdr(), address);
-
-                if (suspectedNodes.containsKey(address.getBaseAdr())) {
-                    suspectedNodes.remove(address.getBaseAdr());
-                }
-
-                if (sendBuffer.containsKey(address.getBaseAdr())) {
-                    NodeDetails nodeInfo = sendBuffer.get(address.getBaseAdr());
-                    nodeInfo.setIncarnationCounter(incarnationCounter);
-                    nodeInfo.setType(NodeDetails.Type.NEW);
-                    sendBuffer.put(address.getBaseAdr(), nodeInfo);
-                }
+        int id = address.getId();
+        byte state = members.getState(id);
+        if (MembershipTable.isAlive(state)) {
+            if (members.getIncarnation(id) <= incarnationCounter) {
+                members.put(address, MembershipTable.ALIVE, incarnationCounter);
+                refreshSendBuffer(id, incarnationCounter);
             }
         }
-        else if (!deadNodes.containsKey(address.getBaseAdr())) {
-            aliveNodes.put(address.getBaseAdr(), incarnationCounter);
-            addressMapping.put(address.getBaseAdr(), address);
-            sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.NEW));
-            addToPingList(address);
+        else if (state != MembershipTable.DEAD) {
+            members.put(address, MembershipTable.ALIVE, incarnationCounter);
+            sendBuffer.put(new NodeDetails(address, incarnationCounter, NodeDetails.Type.NEW));
+            probeList.add(id);
+        }
+    }
+
+    //Also update counter in send queue
+    private void refreshSendBuffer(int id, int incarnationCounter) {
+        NodeDetails nodeInfo = sendBuffer.get(id);
+        if (nodeInfo != null) {
+            nodeInfo.setIncarnationCounter(incarnationCounter);
+            nodeInfo.setType(NodeDetails.Type.NEW);
         }
     }
 
     
  // Propagating when new parents are received
     public void addNewNodeToSendBuffer(NatedAddress address, int incarnationCounter) {
-        sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.NEW));
+        sendBuffer.put(new NodeDetails(address, incarnationCounter, NodeDetails.Type.NEW));
     }
 
-   
-    private void addToPingList(NatedAddress address) {
-        int insertIndex = (int) (pingList.size() * rand.nextDouble());
-        pingList.add(insertIndex, address.getBaseAdr());
+    // Refuting a suspicion of this node: the new incarnation goes first into the next pongs.
+    public void refute(int incarnationCounter) {
+        sendBuffer.putFirst(new NodeDetails(selfAddress, incarnationCounter, NodeDetails.Type.NEW));
     }
 
-   
-    public void addSuspected(NatedAddress address, int incarnationCounter) {
+    // A suspicion learned from gossip, passed on with the id of the node that raised it.
+    public void addSuspected(NatedAddress address, int incarnationCounter, int suspecterId) {
 
-        if (address.getBaseAdr().equals(selfAddress.getBaseAdr())) {
+        if (isSelf(address)) {
             return;
         }
 
-        if (aliveNodes.containsKey(address.getBaseAdr())) {
-            if (aliveNodes.get(address.getBaseAdr()) <= incarnationCounter) {
-                aliveNodes.put(address.getBaseAdr(), incarnationCounter);
-                addressMapping.put(address.getBaseAdr(), address);
+        int id = address.getId();
+        byte state = members.getState(id);
+        if (MembershipTable.isAlive(state)) {
+            if (members.getIncarnation(id) <= incarnationCounter) {
+                members.put(address, MembershipTable.SUSPECTED, incarnationCounter);
 
-                if (!suspectedNodes.containsKey(address.getBaseAdr())) {
-                    sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.SUSPECTED));
+                if (state != MembershipTable.SUSPECTED) {
+                    sendBuffer.put(new NodeDetails(address, incarnationCounter, suspecterId));
                 }
-
-                suspectedNodes.put(address.getBaseAdr(), incarnationCounter);
             }
         }
-        else if (!deadNodes.containsKey(address.getBaseAdr())) {
-            aliveNodes.put(address.getBaseAdr(), incarnationCounter);
-            addressMapping.put(address.getBaseAdr(), address);
-            suspectedNodes.put(address.getBaseAdr(), incarnationCounter);
+        else if (state != MembershipTable.DEAD) {
+            members.put(address, MembershipTable.SUSPECTED, incarnationCounter);
+            probeList.add(id);
 
             //Add node to send buffer in order to propagate it.
-            sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.SUSPECTED));
+            sendBuffer.put(new NodeDetails(address, incarnationCounter, suspecterId));
         }
     }
 
-   
+    // A suspicion raised by this node.
     public void addSuspected(NatedAddress address) {
-        int incarnationCounter = 0;
-
-        if (aliveNodes.containsKey(address.getBaseAdr())) {
-            incarnationCounter = aliveNodes.get(address.getBaseAdr());
+        int id = address.getId();
+        if (members.getState(id) == MembershipTable.DEAD) {
+            return;
         }
 
-        suspectedNodes.put(address.getBaseAdr(), incarnationCounter);
-        addressMapping.put(address.getBaseAdr(), address);
+        int incarnationCounter = members.getIncarnation(id);
+        members.put(address, MembershipTable.SUSPECTED, incarnationCounter);
+        probeList.add(id);
 
         //Add node to send buffer in order to propagate it.
-        sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.SUSPECTED));
+        sendBuffer.put(new NodeDetails(address, incarnationCounter, selfAddress.getId()));
     }
 
     
     public void addDead(NatedAddress address, int incarnationCounter) {
         //Never add self to lists.
-        if (address.getBaseAdr().equals(selfAddress.getBaseAdr())) {
+        if (isSelf(address)) {
             return;
         }
 
-        aliveNodes.remove(address.getBaseAdr());
-        suspectedNodes.remove(address.getBaseAdr());
-        pingList.remove(address.getBaseAdr());
-        deadNodes.put(address.getBaseAdr(), incarnationCounter);
-        addressMapping.put(address.getBaseAdr(), address);
+        int id = address.getId();
+        probeList.remove(id);
+        members.put(address, MembershipTable.DEAD, incarnationCounter);
 
         //Add node to send buffer in order to propagate it.
-        sendBuffer.put(address.getBaseAdr(), new NodeDetails(address, incarnationCounter, NodeDetails.Type.DEAD));
+        sendBuffer.put(new NodeDetails(address, incarnationCounter, NodeDetails.Type.DEAD));
+    }
+
+  
+    public boolean isSuspected(NatedAddress address) {
+        return members.getState(address.getId()) == MembershipTable.SUSPECTED;
+    }
+
+    public int getIncarnation(NatedAddress address) {
+        return members.getIncarnation(address.getId());
     }
 
   
     public boolean addDead(NatedAddress address) {
         
-        if (suspectedNodes.containsKey(address.getBaseAdr())) {
+        if (members.getState(address.getId()) == MembershipTable.SUSPECTED) {
             addDead(address, 0);
 
             return true;
@@ -194,121 +204,199 @@ public class NodeManager {
     }
 
   
+    // Next node in the probe order, every alive or suspected node is returned once per round.
     public NatedAddress getRandomAliveNode() {
-        NatedAddress natedAddress = null;
-        boolean twice = false;
-        while (natedAddress == null) {
-            if (pingList.isEmpty() || pingIndex >= pingList.size()) {
-                pingList.clear();
-                pingList.addAll(aliveNodes.keySet());
-                Collections.shuffle(pingList, rand);
-                pingIndex = 0;
-                if (!twice) {
-                    twice = true;
-                }
-                else {
-                    break;
-                }
+        int id;
+        while ((id = probeList.next()) >= 0) {
+            if (MembershipTable.isAlive(members.getState(id))) {
+                return members.getAddress(id);
             }
-            if (pingList.isEmpty()) {
-                return null;
+            probeList.remove(id);
+        }
+        return null;
+    }
+  
+    // Up to count distinct alive or suspected nodes chosen at random, the probe order is left as it is.
+    public List<NatedAddress> getRandomAliveNodes(int count) {
+        List<NatedAddress> nodes = new ArrayList<NatedAddress>(count);
+        for (int id : probeList.sample(count)) {
+            if (MembershipTable.isAlive(members.getState(id))) {
+                nodes.add(members.getAddress(id));
             }
-            Address address = pingList.get(pingIndex);
-            natedAddress = addressMapping.get(address);
-            pingIndex++;
         }
-        return natedAddress;
+        return nodes;
     }
 
-   
-    public Pong getPong(int pingNr, int incarnationCounter) {
-        Map<Address, Integer> newNodesToSend = new HashMap<Address, Integer>();
-        Map<Address, Integer> suspectedNodesToSend = new HashMap<Address, Integer>();
-        Map<Address, Integer> deadNodesToSend = new HashMap<Address, Integer>();
-
-        List<NodeDetails> bufferAsList = new ArrayList<NodeDetails>(sendBuffer.values());
-
-        Collections.sort(bufferAsList, new Comparator<NodeDetails>() {
-            @Override
-            public int compare(NodeDetails o1, NodeDetails o2) {
-                if (o1.getSendCounter() > o2.getSendCounter()) {
-                    return 1;
-                }
-                else if (o1.getSendCounter() < o2.getSendCounter()) {
-                    return -1;
-                }
-                else {
-                    return 0;
-                }
-            }
-        });
+    // Address of a member for a compact message. A NATed node with a newer incarnation may have changed parents since.
+    @Override
+    public NatedAddress resolve(int id, int incarnationCounter) {
+        NatedAddress address = members.getAddress(id);
+        if (address == null || (!address.isOpen() && members.getIncarnation(id) < incarnationCounter)) {
+            return null;
+        }
+        return address;
+    }
 
-        int messageSizeCounter = 0;
+    // Number of updates still waiting to be piggybacked.
+    public int getSendBufferSize() {
+        return sendBuffer.size();
+    }
 
-        for (NodeDetails nodeInfo : bufferAsList) {
-            if (messageSizeCounter > SwimComp.PIGGYBACK_MESSAGE_SIZE) {
+    // The pong to the given node, with the updates that fit in the piggyback byte budget.
+    public Pong getPong(NatedAddress destination, int pingNr, int incarnationCounter) {
+        Map<NatedAddress, Integer> newNodesToSend = new HashMap<NatedAddress, Integer>();
+        Map<NatedAddress, Integer> suspectedNodesToSend = new HashMap<NatedAddress, Integer>();
+        Map<NatedAddress, Integer> suspectersToSend = new HashMap<NatedAddress, Integer>();
+        Map<NatedAddress, Integer> deadNodesToSend = new HashMap<NatedAddress, Integer>();
+
+        //Take the least gossiped updates that fit in the pong, the queue is already ordered by send counter.
+        List<NodeDetails> toSend = new ArrayList<NodeDetails>();
+        PongSizer sizer = new PongSizer(selfAddress, destination);
+        int misfits = 0;
+        for (NodeDetails nodeInfo = sendBuffer.first(); nodeInfo != null; nodeInfo = sendBuffer.next(nodeInfo)) {
+            if (toSend.size() > config.piggybackMessageSize || config.piggybackByteBudget - sizer.size() < MIN_UPDATE_SIZE) {
                 break;
             }
 
-            nodeInfo.setSendCounter(nodeInfo.getSendCounter() + 1);
+            NatedAddress address = members.getAddress(nodeInfo.getAddress().getId());
+            NatedAddress addressToSend = addresses.get(address != null ? address : nodeInfo.getAddress(), nodeInfo.getIncarnationCounter());
+
+            int size = sizer.sizeOf(addressToSend, nodeInfo.getIncarnationCounter());
+            if (nodeInfo.isSuspected()) {
+                size += Varint.sizeOf(nodeInfo.getSuspecterId());
+            }
+            if (sizer.size() + size > config.piggybackByteBudget) {
+                //Keep looking for smaller updates, but do not walk the whole buffer for a full pong.
+                if (++misfits > MAX_MISFITS) {
+                    break;
+                }
+                continue;
+            }
+            sizer.add(addressToSend, nodeInfo.getIncarnationCounter());
+            if (nodeInfo.isSuspected()) {
+                sizer.addSuspecter(nodeInfo.getSuspecterId());
+            }
+            toSend.add(nodeInfo);
 
             switch (nodeInfo.getType()) {
 
                 case NEW:
-                    newNodesToSend.put(nodeInfo.getAddress().getBaseAdr(), nodeInfo.getIncarnationCounter());
+                    newNodesToSend.put(addressToSend, nodeInfo.getIncarnationCounter());
                     break;
                 case SUSPECTED:
-                    suspectedNodesToSend.put(nodeInfo.getAddress().getBaseAdr(), nodeInfo.getIncarnationCounter());
+                    suspectedNodesToSend.put(addressToSend, nodeInfo.getIncarnationCounter());
+                    suspectersToSend.put(addressToSend, nodeInfo.getSuspecterId());
                     break;
                 case DEAD:
-                    deadNodesToSend.put(nodeInfo.getAddress().getBaseAdr(), nodeInfo.getIncarnationCounter());
+                    deadNodesToSend.put(addressToSend, nodeInfo.getIncarnationCounter());
                     break;
             }
+        }
 
-            if (nodeInfo.getSendCounter() > SwimComp.LAMBDA * Math.max(1, Math.log(Math.max(1, aliveNodes.size())))) {
-                sendBuffer.remove(nodeInfo.getAddress().getBaseAdr());
-            }
+        //Updates leave the buffer once piggybacked more than Lambda * log(n) times.
+        sendBuffer.markSent(toSend, config.lambda * Math.max(1, Math.log(Math.max(1, members.aliveCount()))));
 
-            messageSizeCounter++;
-        }
-        return new Pong(convertToNated(newNodesToSend), convertToNated(suspectedNodesToSend), convertToNated(deadNodesToSend), pingNr, incarnationCounter);
+        return new Pong(newNodesToSend, suspectedNodesToSend, suspectersToSend, deadNodesToSend, pingNr, incarnationCounter);
     }
 
   
     public void printAliveNodes() {
-        SwimComp.log.info("{} Node state:\nAlive nodes({}): {}\nSuspected nodes: {}\nDead Nodes: {}", new Object[]{selfAddress.getId(), aliveNodes.size(), aliveNodes, suspectedNodes, deadNodes});
+        SwimComp.log.info("{} Node state:\nAlive nodes({}): {}\nSuspected nodes: {}\nDead Nodes: {}", new Object[]{selfAddress.getId(), members.aliveCount(), getIncarnations(MembershipTable.ALIVE), getIncarnations(MembershipTable.SUSPECTED), getIncarnations(MembershipTable.DEAD)});
     }
 
-   
-    public Map<NatedAddress, Integer> convertToNated(Map<Address, Integer> nodes) {
-        Map<NatedAddress, Integer> natedAddresses = new HashMap<NatedAddress, Integer>();
-        for (Address node : nodes.keySet()) {
-            NatedAddress address = addressMapping.get(node);
-            if (address != null) {
-                try {
-                    NatedAddress addressToSend = new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, address.getId()), address.getNatType(), new HashSet<NatedAddress>(address.getParents()));
-                    natedAddresses.put(addressToSend, nodes.get(node));
-                } catch (UnknownHostException e) {
-                    e.printStackTrace();
-                }
+    //Node id to incarnation counter of all members in the given state, alive includes suspected nodes.
+    private Map<Integer, Integer> getIncarnations(byte state) {
+        Map<Integer, Integer> incarnations = new HashMap<Integer, Integer>();
+        for (int slot = 0; slot < members.capacity(); slot++) {
+            if (matches(members.stateAt(slot), state)) {
+                incarnations.put(members.idAt(slot), members.incarnationAt(slot));
+            }
+        }
+        return incarnations;
+    }
+
+    private static boolean matches(byte memberState, byte state) {
+        return state == MembershipTable.ALIVE ? MembershipTable.isAlive(memberState) : memberState == state;
+    }
 
 
+    private Map<NatedAddress, Integer> getNodes(byte state) {
+        Map<NatedAddress, Integer> natedAddresses = new HashMap<NatedAddress, Integer>();
+        for (int slot = 0; slot < members.capacity(); slot++) {
+            if (matches(members.stateAt(slot), state)) {
+                natedAddresses.put(addresses.get(members.addressAt(slot), members.incarnationAt(slot)), members.incarnationAt(slot));
             }
         }
         return natedAddresses;
     }
 
+    /**
+     * Status to report to the aggregator. In delta mode only nodes whose state or
+     * incarnation changed since the last acknowledged status are listed, except
+     * every fullStatusPeriod statuses (or while nothing was acknowledged) when a
+     * full snapshot is sent so the aggregator can resynchronise.
+     */
+    public Status getStatus(int statusNr, int receivedPings, int sentPings, boolean delta, int fullStatusPeriod) {
+        unackedVersions.put(statusNr, members.version());
+        if (unackedVersions.size() > fullStatusPeriod) {
+            Iterator<Integer> oldest = unackedVersions.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+
+        if (!delta || ackedStatusNr == Status.FULL || statusNr % fullStatusPeriod == 0) {
+            return new Status(statusNr, receivedPings, sentPings, getAliveNodes(), getSuspectedNodes(), getDeadNodes());
+        }
+
+        //Members changed since the acked status, a member changed back to its acked state is listed as well.
+        Map<NatedAddress, Integer> aliveNodes = new HashMap<NatedAddress, Integer>();
+        Map<NatedAddress, Integer> suspectedNodes = new HashMap<NatedAddress, Integer>();
+        Map<NatedAddress, Integer> deadNodes = new HashMap<NatedAddress, Integer>();
+        for (int id : members.changedSince(ackedVersion)) {
+            int slot = members.slotOf(id);
+            byte state = members.stateAt(slot);
+            NatedAddress address = addresses.get(members.addressAt(slot), members.incarnationAt(slot));
+            if (state == MembershipTable.DEAD) {
+                deadNodes.put(address, members.incarnationAt(slot));
+            }
+            else {
+                aliveNodes.put(address, members.incarnationAt(slot));
+                if (state == MembershipTable.SUSPECTED) {
+                    suspectedNodes.put(address, members.incarnationAt(slot));
+                }
+            }
+        }
+        return new Status(statusNr, ackedStatusNr, receivedPings, sentPings, aliveNodes, suspectedNodes, deadNodes);
+    }
+
+    // The aggregator holds the given status, so later statuses can be sent as a delta of it.
+    public void statusAcked(int statusNr) {
+        Integer version = unackedVersions.get(statusNr);
+        if (version == null || statusNr < ackedStatusNr) {
+            return;
+        }
+        ackedVersion = version;
+        ackedStatusNr = statusNr;
+        members.trimChanges(ackedVersion);
+        Iterator<Integer> it = unackedVersions.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() <= statusNr) {
+                it.remove();
+            }
+        }
+    }
+
     public Map<NatedAddress, Integer> getAliveNodes() {
-        return convertToNated(aliveNodes);
+        return getNodes(MembershipTable.ALIVE);
     }
 
    
     public Map<NatedAddress, Integer> getDeadNodes() {
-        return convertToNated(deadNodes);
+        return getNodes(MembershipTable.DEAD);
     }
 
     public Map<NatedAddress, Integer> getSuspectedNodes() {
-        return convertToNated(suspectedNodes);
+        return getNodes(MembershipTable.SUSPECTED);
     }
 
-}
\ No newline at end of file
+}
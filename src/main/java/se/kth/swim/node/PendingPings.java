@@ -0,0 +1,110 @@
+package se.kth.swim.node;
+
+import se.kth.swim.util.IntObjectMap;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.UUID;
+
+/**
+ * Pings waiting for their pong, keyed by ping number. A ping stays pending
+ * until its pong (direct or through a K-indirect ping) arrives or the node is
+ * given up on at the dead timeout, so every lookup is a single int probe.
+ */
+public class PendingPings {
+
+    private final IntObjectMap<PendingPing> pings;
+
+    public PendingPings() {
+        this.pings = new IntObjectMap<PendingPing>();
+    }
+
+    public void add(int pingNr, NatedAddress target, long sentAt, long timeout) {
+        pings.put(pingNr, new PendingPing(pingNr, target, sentAt, timeout));
+    }
+
+    public boolean contains(int pingNr) {
+        return pings.containsKey(pingNr);
+    }
+
+    public PendingPing get(int pingNr) {
+        return pings.get(pingNr);
+    }
+
+    /**
+     * @return the removed ping, or null if it was not pending.
+     */
+    public PendingPing remove(int pingNr) {
+        return pings.remove(pingNr);
+    }
+
+    public int size() {
+        return pings.size();
+    }
+
+    public static class PendingPing {
+
+        private final int pingNr;
+        private final NatedAddress target;
+        private final long sentAt;
+        private final long timeout;    //Time the pong was waited for before K-indirect pings.
+        private int indirectProbes = 0;    //K-indirect pings sent for it after the pong timeout.
+        private int nacks = 0;    //Helpers that could not reach the target either.
+        private boolean suspicionStarted = false;
+        private UUID timeoutId;    //Pong or suspected timeout still scheduled for it, cancelled once the ping is answered.
+
+        public PendingPing(int pingNr, NatedAddress target, long sentAt, long timeout) {
+            this.pingNr = pingNr;
+            this.target = target;
+            this.sentAt = sentAt;
+            this.timeout = timeout;
+        }
+
+        public int getPingNr() {
+            return pingNr;
+        }
+
+        public NatedAddress getTarget() {
+            return target;
+        }
+
+        public long getSentAt() {
+            return sentAt;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public int getIndirectProbes() {
+            return indirectProbes;
+        }
+
+        public void setIndirectProbes(int indirectProbes) {
+            this.indirectProbes = indirectProbes;
+        }
+
+        public int getNacks() {
+            return nacks;
+        }
+
+        public void addNack() {
+            nacks++;
+        }
+
+        public UUID getTimeoutId() {
+            return timeoutId;
+        }
+
+        public void setTimeoutId(UUID timeoutId) {
+            this.timeoutId = timeoutId;
+        }
+
+        public boolean isSuspicionStarted() {
+            return suspicionStarted;
+        }
+
+        public void setSuspicionStarted(boolean suspicionStarted) {
+            this.suspicionStarted = suspicionStarted;
+        }
+    }
+}
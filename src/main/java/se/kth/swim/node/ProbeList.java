@@ -0,0 +1,130 @@
+package se.kth.swim.node;
+
+import se.kth.swim.util.IntIntMap;
+
+import java.util.Random;
+
+/**
+ * Round-robin probe order over the member ids. The ids before the cursor were
+ * already probed in the current round, the ones after it are still to be
+ * probed. Every probe takes a random id from the rest of the round and swaps it
+ * to the cursor, a Fisher-Yates shuffle done one step per probe, so each member
+ * is probed once every round and a round is never longer than the list.
+ *
+ * New ids are appended to the part still to be probed, which is the same as a
+ * random insertion since the rest of the round is drawn at random. Removal
+ * fills the hole with the last id of the same part, and all operations are O(1).
+ */
+public class ProbeList {
+
+    private final Random rand;
+    private int[] ids;
+    private final IntIntMap positions;   //Index of every id in ids.
+    private int size = 0;
+    private int cursor = 0;
+
+    public ProbeList(Random rand) {
+        this.rand = rand;
+        this.ids = new int[16];
+        this.positions = new IntIntMap();
+    }
+
+    public boolean contains(int id) {
+        return positions.containsKey(id);
+    }
+
+    /**
+     * @return false if the id was already in the list.
+     */
+    public boolean add(int id) {
+        if (positions.containsKey(id)) {
+            return false;
+        }
+        if (size == ids.length) {
+            int[] grown = new int[ids.length << 1];
+            System.arraycopy(ids, 0, grown, 0, size);
+            ids = grown;
+        }
+        set(size++, id);
+        return true;
+    }
+
+    /**
+     * @return false if the id was not in the list.
+     */
+    public boolean remove(int id) {
+        int index = positions.get(id, -1);
+        if (index < 0) {
+            return false;
+        }
+        positions.remove(id);
+        if (index < cursor) {
+            //Keep the probed part contiguous: the last probed id fills the hole, the last id fills its place.
+            cursor--;
+            if (index != cursor) {
+                set(index, ids[cursor]);
+            }
+            index = cursor;
+        }
+        size--;
+        if (index != size) {
+            set(index, ids[size]);
+        }
+        return true;
+    }
+
+    /**
+     * @return the next id to probe, or -1 if the list is empty.
+     */
+    public int next() {
+        if (size == 0) {
+            return -1;
+        }
+        if (cursor == size) {
+            cursor = 0;
+        }
+        int pick = cursor + rand.nextInt(size - cursor);
+        int id = ids[pick];
+        if (pick != cursor) {
+            set(pick, ids[cursor]);
+            set(cursor, id);
+        }
+        cursor++;
+        return id;
+    }
+
+    /**
+     * @return up to count distinct ids drawn uniformly at random, without
+     * touching the probe order.
+     */
+    public int[] sample(int count) {
+        count = Math.min(count, size);
+        int[] sample = new int[count];
+        //Floyd's algorithm: one random draw per sampled index.
+        IntIntMap chosen = new IntIntMap(count);
+        int taken = 0;
+        for (int j = size - count; j < size; j++) {
+            int index = rand.nextInt(j + 1);
+            if (chosen.containsKey(index)) {
+                index = j;
+            }
+            chosen.put(index, index);
+            sample[taken++] = ids[index];
+        }
+        return sample;
+    }
+
+    private void set(int index, int id) {
+        ids[index] = id;
+        positions.put(id, index);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Ids still to be probed in the current round.
+    public int remaining() {
+        return size - cursor;
+    }
+}
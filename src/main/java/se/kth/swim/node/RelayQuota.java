@@ -0,0 +1,135 @@
+package se.kth.swim.node;
+
+import se.kth.swim.msg.RelayLoad;
+import se.kth.swim.util.IntObjectMap;
+
+/**
+ * Token buckets limiting the messages an open node relays to each of its
+ * NATed children. A bucket refills at the relay rate up to the burst size,
+ * every relayed message takes one token and a message finding the bucket
+ * empty is dropped. Only children that heartbeat this node get a bucket of
+ * their own, and lose it when they stop; messages for nodes not yet heard
+ * from share one bucket, so a sender naming arbitrary destinations can
+ * neither grow the table nor get more than one quota through.
+ * <p>
+ * The quota also decides the relay load the node advertises. It is saturated
+ * once it has the maximum children or the smoothed drops per heartbeat reach
+ * SATURATED_DROPS, and stops being saturated only once it is back under three
+ * quarters of the maximum children and the drops fall below CLEAR_DROPS.
+ */
+public class RelayQuota {
+
+    private static final double DROP_SMOOTHING = 0.25;   //Weight of the last heartbeat period in the smoothed drops.
+    private static final double SATURATED_DROPS = 1.0;
+    private static final double CLEAR_DROPS = 0.1;
+
+    private final double tokensPerMs;
+    private final int burst;
+    private final int maxChildren;
+    private final IntObjectMap<Bucket> buckets;   //Bucket of each child, by node id.
+    private final Bucket strangers;               //Shared by the destinations that are not children.
+
+    private long relayed = 0;
+    private long dropped = 0;
+    private long droppedAtUpdate = 0;
+    private double dropRate = 0;
+    private boolean saturated = false;
+
+    public RelayQuota(int messagesPerSecond, int burst, int maxChildren) {
+        this.tokensPerMs = messagesPerSecond / 1000.0;
+        this.burst = burst;
+        this.maxChildren = maxChildren;
+        this.buckets = new IntObjectMap<Bucket>();
+        this.strangers = new Bucket(burst, 0);
+    }
+
+    // A heartbeat from a NATed child, which keeps or gives it a bucket of its own.
+    public void heardFrom(int childId, long now) {
+        Bucket bucket = buckets.get(childId);
+        if (bucket == null) {
+            bucket = new Bucket(burst, now);
+            buckets.put(childId, bucket);
+        }
+        bucket.heardAt = now;
+    }
+
+    /**
+     * @return false if the destination used up its quota, the message is to be dropped.
+     */
+    public boolean tryRelay(int childId, long now) {
+        Bucket bucket = buckets.get(childId);
+        if (bucket == null) {
+            bucket = strangers;
+        }
+        bucket.tokens = Math.min(burst, bucket.tokens + Math.max(0, now - bucket.refilledAt) * tokensPerMs);
+        bucket.refilledAt = now;
+        if (bucket.tokens < 1) {
+            dropped++;
+            return false;
+        }
+        bucket.tokens--;
+        relayed++;
+        return true;
+    }
+
+    // Drops the buckets of the children not heard from since the given time.
+    public void forgetIdle(long heardSince) {
+        int[] idle = new int[buckets.size()];
+        int count = 0;
+        for (int slot = 0; slot < buckets.capacity(); slot++) {
+            Bucket bucket = buckets.valueAt(slot);
+            if (bucket != null && bucket.heardAt < heardSince) {
+                idle[count++] = buckets.keyAt(slot);
+            }
+        }
+        //Removing shifts entries between slots, so not while walking them.
+        for (int i = 0; i < count; i++) {
+            buckets.remove(idle[i]);
+        }
+    }
+
+    public int getChildren() {
+        return buckets.size();
+    }
+
+    /**
+     * Called every heartbeat period: folds the drops since the last call into
+     * the smoothed drops and moves the saturated state across its thresholds.
+     */
+    public RelayLoad updateLoad() {
+        long drops = dropped - droppedAtUpdate;
+        droppedAtUpdate = dropped;
+        dropRate = (1 - DROP_SMOOTHING) * dropRate + DROP_SMOOTHING * drops;
+
+        int children = buckets.size();
+        if (saturated) {
+            saturated = children * 4 > maxChildren * 3 || dropRate >= CLEAR_DROPS;
+        }
+        else {
+            saturated = children >= maxChildren || dropRate >= SATURATED_DROPS;
+        }
+        return new RelayLoad(children, maxChildren, dropRate, saturated);
+    }
+
+    // Totals since the node started.
+    public long getRelayed() {
+        return relayed;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    private static class Bucket {
+
+        private double tokens;
+        private long refilledAt;
+        private long heardAt;
+
+        Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+            this.heardAt = refilledAt;
+        }
+    }
+}
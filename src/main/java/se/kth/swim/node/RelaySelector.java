@@ -0,0 +1,179 @@
+package se.kth.swim.node;
+
+import se.kth.swim.msg.RelayLoad;
+import se.kth.swim.util.IntObjectMap;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Picks the parent relaying a message to a NATed node. The parents of every
+ * destination are kept in an array, rebuilt only when its parent set changes,
+ * and two of them are drawn at random: the healthier one wins, then the one
+ * not advertising a saturated relay load, then the one relaying for fewer
+ * children, then the one with fewer heartbeat pings outstanding, then the one
+ * with the lower smoothed round trip time, then the one that relayed fewer of
+ * our recent messages.
+ * <p>
+ * Relay loads are those open nodes advertise in their Croupier view, so they
+ * are known for most parents. Round trips and outstanding pings come from the
+ * heartbeats to our own parents only. A parent missing a measure is ranked
+ * with the mean of the parents that have it, so the comparison falls through
+ * to the next measure; a parent we know nothing about is never dead nor
+ * saturated and ties with the average parent.
+ */
+public class RelaySelector {
+
+    private final Random rand;
+    private final IntObjectMap<Relay> relays;   //Everything known about a parent, by node id.
+    private final IntObjectMap<Candidates> candidates;   //Parents of each destination, by destination id.
+    private long meanRtt = 0;   //Mean smoothed round trip of the parents heartbeat, as of the last decay.
+    private double meanLoad = 0;    //Mean share of the maximum children of the parents advertising a load, as of the last decay.
+
+    public RelaySelector(Random rand) {
+        this.rand = rand;
+        this.relays = new IntObjectMap<Relay>();
+        this.candidates = new IntObjectMap<Candidates>();
+    }
+
+    public NatedAddress select(NatedAddress destination) {
+        NatedAddress[] parents = parentsOf(destination);
+        if (parents.length == 1) {
+            return parents[0];
+        }
+        int first = rand.nextInt(parents.length);
+        int second = rand.nextInt(parents.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        NatedAddress a = parents[first];
+        NatedAddress b = parents[second];
+        return compare(relays.get(a.getId()), relays.get(b.getId())) <= 0 ? a : b;
+    }
+
+    // The relay load an open node advertised in a Croupier sample, replacing the one seen before.
+    public void advertised(NatedAddress node, RelayLoad load) {
+        relay(node).load = load;
+    }
+
+    // A message to a NATed node was handed to the relay.
+    public void routed(NatedAddress relay) {
+        relay(relay).routed++;
+    }
+
+    public void pingSent(NatedAddress parent) {
+        relay(parent).outstanding++;
+    }
+
+    public void pongReceived(NatedAddress parent, long roundTrip) {
+        Relay relay = relay(parent);
+        relay.outstanding = Math.max(0, relay.outstanding - 1);
+        relay.rtt.sample(roundTrip);
+        relay.dead = false;
+    }
+
+    public void pingTimedOut(NatedAddress parent) {
+        Relay relay = relay(parent);
+        relay.outstanding = Math.max(0, relay.outstanding - 1);
+        relay.dead = true;
+    }
+
+    // Called every heartbeat, so the routed counts weigh the recent messages only.
+    public void decay() {
+        long sum = 0;
+        int count = 0;
+        double loadSum = 0;
+        int loads = 0;
+        for (int slot = 0; slot < relays.capacity(); slot++) {
+            Relay relay = relays.valueAt(slot);
+            if (relay != null) {
+                relay.routed >>= 1;
+                if (relay.rtt.hasSamples()) {
+                    sum += relay.rtt.getSmoothedRtt();
+                    count++;
+                }
+                if (relay.load != null) {
+                    loadSum += share(relay.load);
+                    loads++;
+                }
+            }
+        }
+        meanRtt = count == 0 ? 0 : sum / count;
+        meanLoad = loads == 0 ? 0 : loadSum / loads;
+    }
+
+    private static double share(RelayLoad load) {
+        return load.getMaxChildren() <= 0 ? 1 : (double) load.getChildren() / load.getMaxChildren();
+    }
+
+    private int compare(Relay a, Relay b) {
+        boolean aDead = a != null && a.dead;
+        boolean bDead = b != null && b.dead;
+        if (aDead != bDead) {
+            return aDead ? 1 : -1;
+        }
+        boolean aSaturated = a != null && a.load != null && a.load.isSaturated();
+        boolean bSaturated = b != null && b.load != null && b.load.isSaturated();
+        if (aSaturated != bSaturated) {
+            return aSaturated ? 1 : -1;
+        }
+        double aLoad = a != null && a.load != null ? share(a.load) : meanLoad;
+        double bLoad = b != null && b.load != null ? share(b.load) : meanLoad;
+        if (aLoad != bLoad) {
+            return aLoad < bLoad ? -1 : 1;
+        }
+        int aOutstanding = a == null ? 0 : a.outstanding;
+        int bOutstanding = b == null ? 0 : b.outstanding;
+        if (aOutstanding != bOutstanding) {
+            return aOutstanding < bOutstanding ? -1 : 1;
+        }
+        long aRtt = a != null && a.rtt.hasSamples() ? a.rtt.getSmoothedRtt() : meanRtt;
+        long bRtt = b != null && b.rtt.hasSamples() ? b.rtt.getSmoothedRtt() : meanRtt;
+        if (aRtt != bRtt) {
+            return aRtt < bRtt ? -1 : 1;
+        }
+        int aRouted = a == null ? 0 : a.routed;
+        int bRouted = b == null ? 0 : b.routed;
+        return aRouted < bRouted ? -1 : (aRouted == bRouted ? 0 : 1);
+    }
+
+    private NatedAddress[] parentsOf(NatedAddress destination) {
+        Set<NatedAddress> parents = destination.getParents();
+        Candidates cached = candidates.get(destination.getId());
+        if (cached == null || (cached.parents != parents && !cached.parents.equals(parents))) {
+            cached = new Candidates(parents, parents.toArray(new NatedAddress[parents.size()]));
+            candidates.put(destination.getId(), cached);
+        }
+        return cached.array;
+    }
+
+    private Relay relay(NatedAddress address) {
+        Relay relay = relays.get(address.getId());
+        if (relay == null) {
+            relay = new Relay();
+            relays.put(address.getId(), relay);
+        }
+        return relay;
+    }
+
+    private static class Relay {
+
+        private final RttEstimator rtt = new RttEstimator();
+        private int outstanding = 0;
+        private int routed = 0;
+        private boolean dead = false;
+        private RelayLoad load;     //Last advertised, null until seen in a Croupier sample.
+    }
+
+    private static class Candidates {
+
+        private final Set<NatedAddress> parents;
+        private final NatedAddress[] array;
+
+        Candidates(Set<NatedAddress> parents, NatedAddress[] array) {
+            this.parents = parents;
+            this.array = array;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package se.kth.swim.node;
+
+import se.kth.swim.util.IntObjectMap;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+/**
+ * Pings sent on behalf of K-indirect ping requesters, keyed by the ping number
+ * of the relayed ping. An entry leaves the table when the pong is forwarded,
+ * when it is older than the time to live, or when the table is full and a newer
+ * request needs its place, so memory stays flat whatever the relayed targets do.
+ */
+public class RelayTable {
+
+    private final int capacity;
+    private long timeToLive;
+    private final IntObjectMap<Relay> relays;
+    private final ArrayDeque<Relay> byAge;   //Relays in creation order, may still hold already removed ones.
+
+    private long expired = 0;
+    private long dropped = 0;
+
+    public RelayTable(int capacity, long timeToLive) {
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.relays = new IntObjectMap<Relay>(capacity);
+        this.byAge = new ArrayDeque<Relay>();
+    }
+
+    public void add(int relayPingNr, NatedAddress requester, NatedAddress target, int requesterPingNr, long now) {
+        //Make room by dropping the oldest relays, they are the least likely to still be answered.
+        while (relays.size() >= capacity) {
+            Relay oldest = byAge.poll();
+            if (relays.get(oldest.relayPingNr) == oldest) {
+                relays.remove(oldest.relayPingNr);
+                dropped++;
+            }
+        }
+        Relay relay = new Relay(relayPingNr, requester, target, requesterPingNr, now);
+        relays.put(relayPingNr, relay);
+        byAge.add(relay);
+    }
+
+    /**
+     * @return the relay, or null if the ping was not relayed or already expired.
+     */
+    public Relay get(int relayPingNr) {
+        return relays.get(relayPingNr);
+    }
+
+    /**
+     * @return the removed relay, or null if the ping was not relayed or already expired.
+     */
+    public Relay remove(int relayPingNr) {
+        return relays.remove(relayPingNr);
+    }
+
+    // Removes the relays older than the time to live.
+    public void expire(long now) {
+        while (!byAge.isEmpty() && now - byAge.peek().createdAt >= timeToLive) {
+            Relay oldest = byAge.poll();
+            if (relays.get(oldest.relayPingNr) == oldest) {
+                relays.remove(oldest.relayPingNr);
+                expired++;
+            }
+        }
+        //Forwarded relays are only dropped from the age queue here, do not let them pile up.
+        if (byAge.size() > 2 * capacity) {
+            ArrayDeque<Relay> live = new ArrayDeque<Relay>();
+            for (Relay relay : byAge) {
+                if (relays.get(relay.relayPingNr) == relay) {
+                    live.add(relay);
+                }
+            }
+            byAge.clear();
+            byAge.addAll(live);
+        }
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public int size() {
+        return relays.size();
+    }
+
+    // Relays given up on because their target never answered in time.
+    public long getExpired() {
+        return expired;
+    }
+
+    // Relays dropped before their time to live because the table was full.
+    public long getDropped() {
+        return dropped;
+    }
+
+    public static class Relay {
+
+        private final int relayPingNr;
+        private final NatedAddress requester;
+        private final NatedAddress target;
+        private final int requesterPingNr;
+        private final long createdAt;
+        private UUID nackTimeoutId;
+
+        public Relay(int relayPingNr, NatedAddress requester, NatedAddress target, int requesterPingNr, long createdAt) {
+            this.relayPingNr = relayPingNr;
+            this.requester = requester;
+            this.target = target;
+            this.requesterPingNr = requesterPingNr;
+            this.createdAt = createdAt;
+        }
+
+        public NatedAddress getRequester() {
+            return requester;
+        }
+
+        public NatedAddress getTarget() {
+            return target;
+        }
+
+        public int getRequesterPingNr() {
+            return requesterPingNr;
+        }
+
+        // Timeout for nacking the requester, cancelled when the pong comes first.
+        public UUID getNackTimeoutId() {
+            return nackTimeoutId;
+        }
+
+        public void setNackTimeoutId(UUID nackTimeoutId) {
+            this.nackTimeoutId = nackTimeoutId;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package se.kth.swim.node;
+
+/**
+ * Round trip time estimator in the style of the TCP retransmission timer
+ * (RFC 6298): a smoothed round trip time, its mean deviation, and a timeout of
+ * the smoothed time plus four deviations.
+ */
+public class RttEstimator {
+
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+
+    private double smoothedRtt;
+    private double rttVariation;
+    private int samples = 0;
+
+    public void sample(long rtt) {
+        if (samples == 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2.0;
+        }
+        else {
+            rttVariation = (1 - BETA) * rttVariation + BETA * Math.abs(smoothedRtt - rtt);
+            smoothedRtt = (1 - ALPHA) * smoothedRtt + ALPHA * rtt;
+        }
+        samples++;
+    }
+
+    public boolean hasSamples() {
+        return samples > 0;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public long getSmoothedRtt() {
+        return Math.round(smoothedRtt);
+    }
+
+    public long getRttVariation() {
+        return Math.round(rttVariation);
+    }
+
+    public long getTimeout() {
+        return Math.round(smoothedRtt + 4 * rttVariation);
+    }
+}
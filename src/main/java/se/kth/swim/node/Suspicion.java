@@ -0,0 +1,95 @@
+package se.kth.swim.node;
+
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Suspicion of one incarnation of a node, raised by this node or learned from
+ * gossip, with the Lifeguard dynamic timeout. It starts at the maximum timeout
+ * and shrinks towards the minimum with the log of the number of other nodes
+ * independently suspecting the same node. The suspicion ends when the node is
+ * declared dead at the timeout, when it refutes with a higher incarnation, or
+ * when it is replaced by the suspicion of a higher incarnation.
+ */
+public class Suspicion {
+
+    public static final int NO_PING = -1;
+
+    private final NatedAddress address;
+    private final int incarnationCounter;
+    private int pingNr;
+    private final long start;
+    private final long minTimeout;
+    private final long maxTimeout;
+    private final int expectedConfirmations;
+    private final Set<Integer> confirmations;
+    private UUID timeoutId;
+
+    public Suspicion(NatedAddress address, int incarnationCounter, int pingNr, long start, long minTimeout, long maxTimeout, int expectedConfirmations) {
+        this.address = address;
+        this.incarnationCounter = incarnationCounter;
+        this.pingNr = pingNr;
+        this.start = start;
+        this.minTimeout = Math.min(minTimeout, maxTimeout);
+        this.maxTimeout = maxTimeout;
+        this.expectedConfirmations = expectedConfirmations;
+        this.confirmations = new HashSet<Integer>();
+    }
+
+    public NatedAddress getAddress() {
+        return address;
+    }
+
+    public int getIncarnationCounter() {
+        return incarnationCounter;
+    }
+
+    // Number of the failed ping of this node behind the suspicion, NO_PING if it was only learned from gossip.
+    public int getPingNr() {
+        return pingNr;
+    }
+
+    public void setPingNr(int pingNr) {
+        this.pingNr = pingNr;
+    }
+
+    // The one dead timeout currently scheduled for the suspicion.
+    public UUID getTimeoutId() {
+        return timeoutId;
+    }
+
+    public void setTimeoutId(UUID timeoutId) {
+        this.timeoutId = timeoutId;
+    }
+
+    /**
+     * @param nodeId node that raised the suspicion, not the one that gossiped it to us.
+     * @return true if this is the first confirmation from the given node.
+     */
+    public boolean confirm(int nodeId) {
+        if (confirmations.size() >= expectedConfirmations) {
+            return false;
+        }
+        return confirmations.add(nodeId);
+    }
+
+    public int getConfirmations() {
+        return confirmations.size();
+    }
+
+    public long getTimeout() {
+        if (expectedConfirmations < 1) {
+            return minTimeout;
+        }
+        double fraction = Math.log(confirmations.size() + 1) / Math.log(expectedConfirmations + 1);
+        return Math.max(minTimeout, (long) (maxTimeout - (maxTimeout - minTimeout) * fraction));
+    }
+
+    // Time left before the suspected node is declared dead.
+    public long remaining(long now) {
+        return Math.max(0, start + getTimeout() - now);
+    }
+}
@@ -0,0 +1,100 @@
+package se.kth.swim.node;
+
+import se.kth.swim.SwimConfig;
+import se.kth.swim.util.IntObjectMap;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Suspicions of the members, by node id. A suspicion holds at most one failed
+ * ping of its node, which stays pending so a late pong can still refute it. A
+ * failed ping that no suspicion takes, because the node is already suspected
+ * behind an earlier ping or only at a higher incarnation, is removed from the
+ * pending pings right away: nothing would ever answer or remove it.
+ * <p>
+ * Timers belong to the component, so every method adds the timeouts left
+ * without a purpose to the given list, for the caller to cancel.
+ */
+public class SuspicionTable {
+
+    private final IntObjectMap<Suspicion> suspicions;
+    private final PendingPings pendingPings;
+
+    public SuspicionTable(PendingPings pendingPings) {
+        this.suspicions = new IntObjectMap<Suspicion>();
+        this.pendingPings = pendingPings;
+    }
+
+    public Suspicion get(int nodeId) {
+        return suspicions.get(nodeId);
+    }
+
+    public int size() {
+        return suspicions.size();
+    }
+
+    /**
+     * A suspicion of a higher incarnation replaces the current one, one of a
+     * lower incarnation is stale and ignored, one of the same incarnation
+     * confirms it.
+     *
+     * @param pingNr the failed ping behind the suspicion, Suspicion.NO_PING if it was learned from gossip.
+     * @param confirmerId node that raised the suspicion, null if it was this node.
+     * @param cancelled receives the timeouts to cancel.
+     * @return the suspicion whose dead timeout is to be scheduled again, null if it did not change.
+     */
+    public Suspicion suspect(NatedAddress address, int incarnation, int pingNr, Integer confirmerId, long now, SwimConfig config, List<UUID> cancelled) {
+        Suspicion suspicion = suspicions.get(address.getId());
+        if (suspicion != null && incarnation < suspicion.getIncarnationCounter()) {
+            release(pingNr, cancelled);
+            return null;
+        }
+        if (suspicion == null || incarnation > suspicion.getIncarnationCounter()) {
+            end(address.getId(), cancelled);
+            suspicion = new Suspicion(address, incarnation, pingNr, now, config.minDeadTimeout, config.deadTimeout, config.suspicionConfirmations);
+            suspicions.put(address.getId(), suspicion);
+            if (confirmerId != null) {
+                suspicion.confirm(confirmerId);
+            }
+            return suspicion;
+        }
+
+        if (pingNr != Suspicion.NO_PING) {
+            if (suspicion.getPingNr() == Suspicion.NO_PING) {
+                suspicion.setPingNr(pingNr);
+            }
+            else if (suspicion.getPingNr() != pingNr) {
+                release(pingNr, cancelled);
+            }
+        }
+        return confirmerId != null && suspicion.confirm(confirmerId) ? suspicion : null;
+    }
+
+    /**
+     * Drops the suspicion of the node with its dead timeout and the failed ping behind it.
+     *
+     * @return the suspicion, or null if the node was not suspected.
+     */
+    public Suspicion end(int nodeId, List<UUID> cancelled) {
+        Suspicion suspicion = suspicions.remove(nodeId);
+        if (suspicion != null) {
+            if (suspicion.getTimeoutId() != null) {
+                cancelled.add(suspicion.getTimeoutId());
+            }
+            release(suspicion.getPingNr(), cancelled);
+        }
+        return suspicion;
+    }
+
+    private void release(int pingNr, List<UUID> cancelled) {
+        if (pingNr == Suspicion.NO_PING) {
+            return;
+        }
+        PendingPings.PendingPing pendingPing = pendingPings.remove(pingNr);
+        if (pendingPing != null && pendingPing.getTimeoutId() != null) {
+            cancelled.add(pendingPing.getTimeoutId());
+        }
+    }
+}
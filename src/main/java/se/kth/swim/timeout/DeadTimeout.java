@@ -7,13 +7,11 @@ import se.sics.p2ptoolbox.util.network.NatedAddress;
 public class DeadTimeout extends Timeout {
 
     private NatedAddress address;
-    private int pingNr;
 
-    public DeadTimeout(ScheduleTimeout request, NatedAddress address, int pingNr) {
+    public DeadTimeout(ScheduleTimeout request, NatedAddress address) {
         super(request);
 
         this.address = address;
-        this.pingNr = pingNr;
     }
 
     public NatedAddress getAddress() {
@@ -24,12 +22,4 @@ public class DeadTimeout extends Timeout {
         this.address = address;
     }
 
-    public int getPingNr() {
-        return pingNr;
-    }
-
-    public void setPingNr(int pingNr) {
-        this.pingNr = pingNr;
-    }
-
 }
\ No newline at end of file
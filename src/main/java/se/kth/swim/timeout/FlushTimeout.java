@@ -0,0 +1,20 @@
+package se.kth.swim.timeout;
+
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+
+public class FlushTimeout extends Timeout {
+
+    private int destinationId;
+
+    public FlushTimeout(ScheduleTimeout request, int destinationId) {
+        super(request);
+
+        this.destinationId = destinationId;
+    }
+
+    public int getDestinationId() {
+        return destinationId;
+    }
+
+}
\ No newline at end of file
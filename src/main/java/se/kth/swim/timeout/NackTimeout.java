@@ -0,0 +1,20 @@
+package se.kth.swim.timeout;
+
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+
+public class NackTimeout extends Timeout {
+
+    private int pingNr;
+
+    public NackTimeout(ScheduleTimeout request, int pingNr) {
+        super(request);
+
+        this.pingNr = pingNr;
+    }
+
+    public int getPingNr() {
+        return pingNr;
+    }
+
+}
\ No newline at end of file
@@ -1,11 +1,11 @@
 package se.kth.swim.timeout;
 
-import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.ScheduleTimeout;
 import se.sics.kompics.timer.Timeout;
 
 public class PingTimeout extends Timeout {
 
-    public PingTimeout(SchedulePeriodicTimeout request) {
+    public PingTimeout(ScheduleTimeout request) {
         super(request);
     }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package se.kth.swim.timeout;
+
+import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.Timeout;
+
+public class RelaySweepTimeout extends Timeout {
+
+    public RelaySweepTimeout(SchedulePeriodicTimeout request) {
+        super(request);
+    }
+}
\ No newline at end of file
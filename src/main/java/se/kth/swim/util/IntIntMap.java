@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive int keys to primitive int values,
+ * with linear probing and backward shift deletion. Same layout as
+ * {@link IntObjectMap}, with a separate array marking the used slots.
+ */
+public class IntIntMap {
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(int key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * @return the value of the key, or defaultValue if the key is not mapped.
+     */
+    public int get(int key, int defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(int key, int value) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        insert(key, value);
+        size++;
+    }
+
+    private void insert(int key, int value) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+    }
+
+    /**
+     * @return false if the key was not mapped.
+     */
+    public boolean remove(int key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        //Shift back the following entries of the probe sequence into the freed slot.
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[free] = false;
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
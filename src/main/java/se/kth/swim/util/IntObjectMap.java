@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive int keys to objects, with linear
+ * probing and backward shift deletion, so lookups neither box the key nor
+ * allocate entries.
+ */
+public class IntObjectMap<V> {
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slotOf(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @return the previous value of the key, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            V old = (V) values[slot];
+            values[slot] = value;
+            return old;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        insert(key, value);
+        size++;
+        return null;
+    }
+
+    private void insert(int key, Object value) {
+        int slot = hash(key) & mask;
+        while (values[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    /**
+     * @return the removed value, or null if the key was not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        V old = (V) values[slot];
+        //Shift back the following entries of the probe sequence into the freed slot.
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Slot level access used to iterate over the map without allocating.
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return values[slot] != null;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Hashed timer wheel. Time advances in ticks; a timer lands in the slot of its
+ * expiry tick modulo the wheel size, with the number of full turns left before
+ * it is due, so scheduling and cancelling are O(1) and a tick only visits the
+ * timers of one slot. Periodic timers are put back into the wheel when they fire.
+ */
+public class TimerWheel<T> {
+
+    private final Entry<T>[] slots;
+    private final Map<UUID, Entry<T>> entries;
+    private int current = 0;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int size) {
+        this.slots = new Entry[size];
+        this.entries = new HashMap<UUID, Entry<T>>();
+    }
+
+    /**
+     * @param delayTicks ticks until the timer fires, at least one.
+     * @param periodTicks ticks between later firings, 0 for a one-shot timer.
+     */
+    public void schedule(UUID id, T payload, long delayTicks, long periodTicks) {
+        cancel(id);
+        Entry<T> entry = new Entry<T>(id, payload, periodTicks);
+        entries.put(id, entry);
+        insert(entry, Math.max(1, delayTicks));
+    }
+
+    /**
+     * @return false if the timer was not scheduled or already fired.
+     */
+    public boolean cancel(UUID id) {
+        Entry<T> entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * Advances the wheel by one tick and adds the payloads of the timers that
+     * expired to the given list, in the order they were scheduled.
+     */
+    public void tick(List<T> expired) {
+        current = (current + 1) % slots.length;
+        Entry<T> periodic = null;
+        Entry<T> entry = slots[current];
+        while (entry != null) {
+            Entry<T> next = entry.next;
+            if (entry.rounds > 0) {
+                entry.rounds--;
+            }
+            else {
+                unlink(entry);
+                expired.add(entry.payload);
+                if (entry.period > 0) {
+                    //Put back after the walk, a period of whole turns would land in this same slot.
+                    entry.next = periodic;
+                    periodic = entry;
+                }
+                else {
+                    entries.remove(entry.id);
+                }
+            }
+            entry = next;
+        }
+        while (periodic != null) {
+            Entry<T> next = periodic.next;
+            insert(periodic, periodic.period);
+            periodic = next;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void insert(Entry<T> entry, long ticks) {
+        int slot = (int) ((current + ticks) % slots.length);
+        entry.rounds = (ticks - 1) / slots.length;
+        entry.slot = slot;
+        //Append, so timers due on the same tick fire in the order they were scheduled.
+        Entry<T> head = slots[slot];
+        if (head == null) {
+            entry.prev = entry;
+            entry.next = null;
+            slots[slot] = entry;
+        }
+        else {
+            Entry<T> tail = head.prev;
+            tail.next = entry;
+            entry.prev = tail;
+            entry.next = null;
+            head.prev = entry;
+        }
+    }
+
+    //The head of a slot keeps the tail of the slot in prev.
+    private void unlink(Entry<T> entry) {
+        Entry<T> head = slots[entry.slot];
+        if (entry == head) {
+            slots[entry.slot] = entry.next;
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+        }
+        else {
+            entry.prev.next = entry.next;
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+            else {
+                head.prev = entry.prev;
+            }
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private static class Entry<T> {
+
+        private final UUID id;
+        private final T payload;
+        private final long period;
+        private long rounds;
+        private int slot;
+        private Entry<T> prev;
+        private Entry<T> next;
+
+        Entry(UUID id, T payload, long period) {
+            this.id = id;
+            this.payload = payload;
+            this.period = period;
+        }
+    }
+}
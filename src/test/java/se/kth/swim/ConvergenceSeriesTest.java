@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import se.kth.swim.msg.Status;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import static org.junit.Assert.*;
+
+public class ConvergenceSeriesTest {
+
+    private static final NatedAddress[] NONE = new NatedAddress[0];
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress address(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static Map<NatedAddress, Integer> nodes(int... ids) {
+        Map<NatedAddress, Integer> nodes = new HashMap<NatedAddress, Integer>();
+        for (int id : ids) {
+            nodes.put(address(id), 0);
+        }
+        return nodes;
+    }
+
+    private static Status view(int statusNr, int[] alive, int... dead) {
+        return new Status(statusNr, 0, 0, nodes(alive), nodes(), nodes(dead));
+    }
+
+    private static int[] alive(int... ids) {
+        return ids;
+    }
+
+    @Test
+    public void roundClosesWhenItFallsOutOfTheWindow() {
+        ConvergenceSeries series = new ConvergenceSeries(2, null);
+        for (int statusNr = 1; statusNr <= 3; statusNr++) {
+            series.add(1, view(statusNr, alive(2)));
+        }
+        assertEquals(3, series.getOpenRounds());
+        assertTrue(series.getResults().isEmpty());
+
+        series.add(1, view(4, alive(2)));
+        assertEquals(3, series.getOpenRounds());
+        assertEquals(1, series.getResults().size());
+        assertEquals(1, series.getResults().get(1).reports);
+
+        //Round 2 is still within the window, round 1 is closed.
+        series.add(2, view(2, alive(1)));
+        series.add(2, view(1, alive(1)));
+        assertEquals(1, series.getLateReports());
+        assertEquals(1, series.getResults().get(1).reports);
+
+        SortedMap<Integer, ConvergenceRound.Result> results = series.finish();
+        assertEquals(0, series.getOpenRounds());
+        assertEquals(4, results.size());
+        assertEquals(2, results.get(2).reports);
+        assertEquals(1.0, results.get(2).getConvergence(), 0.0);
+    }
+
+    @Test
+    public void lateReportOpensNoRound() {
+        ConvergenceSeries series = new ConvergenceSeries(0, null);
+        series.add(1, view(5, alive(2)));
+        series.add(2, view(4, alive(1)));
+        series.add(2, view(3, alive(1)));
+        assertEquals(2, series.getLateReports());
+        assertEquals(1, series.finish().size());
+    }
+
+    // Nodes 1 and 2 saw node 4 die, node 3 still lists it alive.
+    @Test
+    public void deathMissedByOneNode() {
+        ConvergenceSeries series = new ConvergenceSeries(2, null);
+        series.add(1, view(1, alive(2, 3), 4));
+        series.add(2, view(1, alive(1, 3), 4));
+        series.add(3, view(1, alive(1, 2, 4)));
+
+        ConvergenceRound.Result result = series.finish().get(1);
+        assertEquals(3, result.reports);
+        assertEquals(1, result.missedDeaths);
+        assertEquals(0, result.falsePositives);
+        assertEquals(3, result.commonAliveNodes);
+        assertEquals(4, result.allAliveNodes);
+    }
+
+    // Node 1 wrongly declares node 3 dead at status 1, and has it alive again at status 2.
+    @Test
+    public void falsePositiveLaterResolves() {
+        ConvergenceSeries series = new ConvergenceSeries(2, null);
+        series.add(1, view(1, alive(2), 3));
+        series.add(2, view(1, alive(1, 3)));
+        series.add(3, view(1, alive(1, 2)));
+        series.add(1, view(2, alive(2, 3)));
+        series.add(2, view(2, alive(1, 3)));
+        series.add(3, view(2, alive(1, 2)));
+
+        SortedMap<Integer, ConvergenceRound.Result> results = series.finish();
+        assertEquals(1, results.get(1).falsePositives);
+        assertEquals(1, results.get(1).missedDeaths);
+        assertEquals(0, results.get(2).falsePositives);
+        assertEquals(0, results.get(2).missedDeaths);
+        assertEquals(1.0, results.get(2).getConvergence(), 0.0);
+    }
+
+    // The same random reports, shuffled across neighbouring status numbers, through both series.
+    private static void feed(ConvergenceSeries series, long seed, int rounds) {
+        Random rand = new Random(seed);
+        for (int statusNr = 1; statusNr <= rounds; statusNr++) {
+            for (int reporter = 1; reporter <= 20; reporter++) {
+                int[] alive = new int[rand.nextInt(20)];
+                for (int i = 0; i < alive.length; i++) {
+                    alive[i] = 1 + rand.nextInt(30);
+                }
+                int late = statusNr - rand.nextInt(4);
+                series.add(reporter, view(late, alive, 1 + rand.nextInt(30)));
+            }
+        }
+    }
+
+    @Test
+    public void parallelEvaluationMatchesSequential() {
+        ConvergenceSeries sequential = new ConvergenceSeries(2, null);
+        feed(sequential, 42, 200);
+        SortedMap<Integer, ConvergenceRound.Result> expected = sequential.finish();
+        assertTrue(sequential.getLateReports() > 0);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ConvergenceSeries parallel = new ConvergenceSeries(2, pool);
+            feed(parallel, 42, 200);
+            SortedMap<Integer, ConvergenceRound.Result> results = parallel.finish();
+
+            assertEquals(expected.size(), results.size());
+            assertEquals(sequential.getLateReports(), parallel.getLateReports());
+            for (ConvergenceRound.Result result : expected.values()) {
+                assertEquals(result.toCsv(), results.get(result.statusNr).toCsv());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Once the component stopped and shut the pool down, closed rounds are evaluated in place.
+    @Test
+    public void shutDownPoolEvaluatesInPlace() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        ConvergenceSeries series = new ConvergenceSeries(0, pool);
+        pool.shutdown();
+        series.add(1, view(1, alive(2)));
+        series.add(1, view(2, alive(2)));
+        assertEquals(1, series.getResults().size());
+        assertEquals(2, series.finish().size());
+    }
+}
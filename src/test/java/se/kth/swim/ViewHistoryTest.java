@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import se.kth.swim.msg.Status;
+import se.sics.kompics.network.Address;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import static org.junit.Assert.*;
+
+public class ViewHistoryTest {
+
+    private static final int DEPTH = 16;
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static final Address REPORTER = new BasicAddress(localHost, 12345, 1);
+
+    private static NatedAddress address(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static Map<NatedAddress, Integer> nodes(int... ids) {
+        Map<NatedAddress, Integer> nodes = new HashMap<NatedAddress, Integer>();
+        for (int id : ids) {
+            nodes.put(address(id), 0);
+        }
+        return nodes;
+    }
+
+    private static Status full(int statusNr, Map<NatedAddress, Integer> alive) {
+        return new Status(statusNr, 0, 0, alive, nodes(), nodes());
+    }
+
+    private static Status delta(int statusNr, int baseStatusNr, Map<NatedAddress, Integer> alive, Map<NatedAddress, Integer> dead) {
+        return new Status(statusNr, baseStatusNr, 0, 0, alive, nodes(), dead);
+    }
+
+    @Test
+    public void inOrderDeltas() {
+        ViewHistory history = new ViewHistory(DEPTH);
+        history.add(REPORTER, full(1, nodes(2, 3)));
+
+        Status second = history.add(REPORTER, delta(2, 1, nodes(), nodes(3)));
+        assertTrue(second.isFull());
+        assertEquals(2, second.getStatusNr());
+        assertEquals(nodes(2), second.getAliveNodes());
+        assertEquals(nodes(3), second.getDeadNodes());
+
+        //Node 3 came back at a higher incarnation.
+        Map<NatedAddress, Integer> refuted = new HashMap<NatedAddress, Integer>();
+        refuted.put(address(3), 1);
+        Status third = history.add(REPORTER, delta(3, 2, refuted, nodes()));
+        assertEquals(2, third.getAliveNodes().size());
+        assertEquals(Integer.valueOf(1), third.getAliveNodes().get(address(3)));
+        assertTrue(third.getDeadNodes().isEmpty());
+    }
+
+    @Test
+    public void duplicateAndReorderedDeltas() {
+        ViewHistory history = new ViewHistory(DEPTH);
+        history.add(REPORTER, full(1, nodes(2, 3)));
+
+        //Status 3 overtook status 2, both are deltas of status 1.
+        Status third = history.add(REPORTER, delta(3, 1, nodes(4), nodes(2)));
+        Status second = history.add(REPORTER, delta(2, 1, nodes(4), nodes()));
+        assertEquals(nodes(3, 4), third.getAliveNodes());
+        assertEquals(nodes(2), third.getDeadNodes());
+        assertEquals(nodes(2, 3, 4), second.getAliveNodes());
+        assertTrue(second.getDeadNodes().isEmpty());
+
+        Status duplicate = history.add(REPORTER, delta(3, 1, nodes(4), nodes(2)));
+        assertEquals(third.getAliveNodes(), duplicate.getAliveNodes());
+        assertEquals(third.getDeadNodes(), duplicate.getDeadNodes());
+    }
+
+    @Test
+    public void agedOutBaseNeedsAFullReport() {
+        ViewHistory history = new ViewHistory(DEPTH);
+        assertNull("no base yet", history.add(REPORTER, delta(1, 0, nodes(2), nodes())));
+
+        history.add(REPORTER, full(1, nodes(2)));
+        for (int statusNr = 2; statusNr <= DEPTH; statusNr++) {
+            history.add(REPORTER, delta(statusNr, statusNr - 1, nodes(), nodes()));
+        }
+        assertNotNull(history.add(REPORTER, delta(DEPTH + 1, 1, nodes(3), nodes())));
+
+        //Status 1 is now the 17th view back.
+        assertNull(history.add(REPORTER, delta(DEPTH + 2, 1, nodes(3), nodes())));
+        assertNotNull(history.add(REPORTER, delta(DEPTH + 2, 2, nodes(3), nodes())));
+
+        Status full = history.add(REPORTER, full(DEPTH + 3, nodes(2, 3)));
+        assertNotNull(full);
+        assertEquals(nodes(2, 3, 4), history.add(REPORTER, delta(DEPTH + 4, DEPTH + 3, nodes(4), nodes())).getAliveNodes());
+    }
+
+    @Test
+    public void viewsAreKeptPerReporter() {
+        ViewHistory history = new ViewHistory(DEPTH);
+        history.add(REPORTER, full(1, nodes(2)));
+        assertNull(history.add(new BasicAddress(localHost, 12345, 2), delta(2, 1, nodes(3), nodes())));
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.msg.codec;
+
+import org.junit.Test;
+import se.kth.swim.msg.*;
+import se.kth.swim.msg.net.*;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SwimCodecTest {
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress open(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static NatedAddress nated(int id, int... parentIds) {
+        Set<NatedAddress> parents = new HashSet<NatedAddress>();
+        for (int parentId : parentIds) {
+            parents.add(open(parentId));
+        }
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id), NatType.NAT, parents);
+    }
+
+    private static Map<NatedAddress, Integer> nodes(int from, int count) {
+        Map<NatedAddress, Integer> nodes = new HashMap<NatedAddress, Integer>();
+        for (int id = from; id < from + count; id++) {
+            nodes.put(id % 2 == 0 ? open(id) : nated(id, 10, 11, 12), id % 7);
+        }
+        return nodes;
+    }
+
+    // Each suspected node is suspected by the node ten thousand ids above it.
+    private static Map<NatedAddress, Integer> suspecters(Map<NatedAddress, Integer> suspectedNodes) {
+        Map<NatedAddress, Integer> suspecters = new HashMap<NatedAddress, Integer>();
+        for (NatedAddress address : suspectedNodes.keySet()) {
+            suspecters.put(address, address.getId() + 10000);
+        }
+        return suspecters;
+    }
+
+    private static Pong pong(Map<NatedAddress, Integer> newNodes, Map<NatedAddress, Integer> suspectedNodes, Map<NatedAddress, Integer> deadNodes, int pingNr, int incarnationCounter) {
+        return new Pong(newNodes, suspectedNodes, suspecters(suspectedNodes), deadNodes, pingNr, incarnationCounter);
+    }
+
+    private static NetMsg roundTrip(NetMsg<?> msg) {
+        ByteBuffer buffer = SwimCodec.encode(msg);
+        NetMsg<?> decoded = SwimCodec.decode(buffer);
+        assertFalse("trailing bytes", buffer.hasRemaining());
+        assertEquals(msg.getClass(), decoded.getClass());
+        assertAddress(msg.getHeader().getSource(), decoded.getHeader().getSource());
+        assertAddress(msg.getHeader().getDestination(), decoded.getHeader().getDestination());
+        return decoded;
+    }
+
+    private static void assertAddress(NatedAddress expected, NatedAddress actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getNatType(), actual.getNatType());
+        assertEquals(ids(expected.getParents()), ids(actual.getParents()));
+    }
+
+    private static Set<Integer> ids(Set<NatedAddress> addresses) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (NatedAddress address : addresses) {
+            ids.add(address.getId());
+        }
+        return ids;
+    }
+
+    private static void assertNodes(Map<NatedAddress, Integer> expected, Map<NatedAddress, Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        Map<Integer, NatedAddress> byId = new HashMap<Integer, NatedAddress>();
+        for (NatedAddress address : actual.keySet()) {
+            byId.put(address.getId(), address);
+        }
+        for (Map.Entry<NatedAddress, Integer> node : expected.entrySet()) {
+            NatedAddress address = byId.get(node.getKey().getId());
+            assertNotNull(address);
+            assertAddress(node.getKey(), address);
+            assertEquals(node.getValue(), actual.get(address));
+        }
+    }
+
+    @Test
+    public void pingRoundTrip() {
+        NetPing decoded = (NetPing) roundTrip(new NetPing(open(1), nated(2, 3, 4), 300, 5));
+        assertEquals(300, decoded.getContent().getPingNr());
+        assertEquals(5, decoded.getContent().getIncarnationCounter());
+    }
+
+    @Test
+    public void pongRoundTrip() {
+        Pong pong = pong(nodes(100, 40), nodes(200, 5), nodes(300, 3), 70000, 2);
+        NetPong decoded = (NetPong) roundTrip(new NetPong(nated(1, 10, 11), open(2), pong));
+        assertEquals(70000, decoded.getContent().getPingNr());
+        assertEquals(2, decoded.getContent().getIncarnationCounter());
+        assertNodes(pong.getNewNodes(), decoded.getContent().getNewNodes());
+        assertNodes(pong.getSuspectedNodes(), decoded.getContent().getSuspectedNodes());
+        assertNodes(pong.getSuspecters(), decoded.getContent().getSuspecters());
+        assertNodes(pong.getDeadNodes(), decoded.getContent().getDeadNodes());
+    }
+
+    @Test
+    public void indirectPingRoundTrip() {
+        NetKIndirectPing decoded = (NetKIndirectPing) roundTrip(new NetKIndirectPing(open(1), open(2), nated(3, 4), 9));
+        assertAddress(nated(3, 4), decoded.getContent().getAddressToPing());
+        assertEquals(9, decoded.getContent().getPingNr());
+
+        NetKIndirectPong decodedPong = (NetKIndirectPong) roundTrip(new NetKIndirectPong(open(2), open(1), nated(3, 4), 6, 9));
+        assertAddress(nated(3, 4), decodedPong.getContent().getAddress());
+        assertEquals(6, decodedPong.getContent().getIncarnationCounter());
+        assertEquals(9, decodedPong.getContent().getPingNr());
+
+        NetKIndirectNack decodedNack = (NetKIndirectNack) roundTrip(new NetKIndirectNack(open(2), open(1), nated(3, 4), 9));
+        assertAddress(nated(3, 4), decodedNack.getContent().getAddress());
+        assertEquals(9, decodedNack.getContent().getPingNr());
+    }
+
+    @Test
+    public void aliveAndNatRoundTrip() {
+        assertEquals(12, ((NetAliveMsg) roundTrip(new NetAliveMsg(open(1), open(2), 12))).getContent().getIncarnationCounter());
+        assertEquals(128, ((NetNATedPing) roundTrip(new NetNATedPing(nated(1, 2), open(2), 128))).getContent().getPingNr());
+        assertEquals(129, ((NetNATedPong) roundTrip(new NetNATedPong(open(2), nated(1, 2), 129))).getContent().getPingNr());
+    }
+
+    @Test
+    public void bundleRoundTrip() {
+        List<NetMsg> messages = new ArrayList<NetMsg>();
+        messages.add(new NetPing(open(1), nated(2, 3), 7, 1));
+        messages.add(new NetKIndirectPing(open(1), nated(2, 3), nated(4, 3), 8));
+        messages.add(new NetAliveMsg(open(1), nated(2, 3), 5));
+        Bundle decoded = ((NetBundle) roundTrip(new NetBundle(open(1), nated(2, 3), messages))).getContent();
+        assertEquals(3, decoded.getMessages().size());
+        assertEquals(7, ((NetPing) decoded.getMessages().get(0)).getContent().getPingNr());
+        assertAddress(nated(2, 3), ((NetPing) decoded.getMessages().get(0)).getHeader().getDestination());
+        assertAddress(nated(4, 3), ((NetKIndirectPing) decoded.getMessages().get(1)).getContent().getAddressToPing());
+        assertEquals(5, ((NetAliveMsg) decoded.getMessages().get(2)).getContent().getIncarnationCounter());
+    }
+
+    @Test
+    public void compactRoundTrip() {
+        final NatedAddress src = nated(1, 10, 11, 12);
+        AddressResolver membership = new AddressResolver() {
+            @Override
+            public NatedAddress resolve(int id, int incarnationCounter) {
+                return id == 1 && incarnationCounter <= 3 ? src : null;
+            }
+        };
+        NetPong pong = new NetPong(src, open(2), pong(nodes(20, 5), nodes(30, 1), nodes(40, 0), 9, 3));
+        ByteBuffer buffer = SwimCodec.encodeCompact(pong, 3);
+        assertTrue(buffer.remaining() < SwimCodec.sizeOf(pong));
+        NetPong decoded = (NetPong) SwimCodec.decode(buffer, open(2), membership);
+        assertFalse("trailing bytes", buffer.hasRemaining());
+        assertAddress(src, decoded.getHeader().getSource());
+        assertAddress(open(2), decoded.getHeader().getDestination());
+        assertEquals(9, decoded.getContent().getPingNr());
+        assertNodes(nodes(20, 5), decoded.getContent().getNewNodes());
+
+        //Full messages decode without the resolver.
+        assertEquals(NetPing.class, SwimCodec.decode(SwimCodec.encode(new NetPing(src, open(2), 1, 3)), open(2), membership).getClass());
+
+        try {
+            SwimCodec.decode(SwimCodec.encodeCompact(pong, 4), open(2), membership);
+            fail("stale sender resolved");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void statusRoundTrip() {
+        Status status = new Status(17, 20, 21, nodes(10, 50), nodes(60, 2), nodes(70, 4));
+        status.setSmoothedRtt(350);
+        status.setRttVariation(90);
+        Status decoded = ((NetStatusMsg) roundTrip(new NetStatusMsg(open(10), open(0), status))).getContent();
+        assertEquals(17, decoded.getStatusNr());
+        assertTrue(decoded.isFull());
+        assertEquals(20, decoded.getReceivedPings());
+        assertEquals(21, decoded.getSentPings());
+        assertEquals(350, decoded.getSmoothedRtt());
+        assertEquals(90, decoded.getRttVariation());
+        assertNodes(status.getAliveNodes(), decoded.getAliveNodes());
+        assertNodes(status.getSuspectedNodes(), decoded.getSuspectedNodes());
+        assertNodes(status.getDeadNodes(), decoded.getDeadNodes());
+    }
+
+    @Test
+    public void deltaStatusRoundTrip() {
+        Status status = new Status(27, 20, 30, 31, nodes(10, 3), nodes(60, 1), nodes(70, 0));
+        Status decoded = ((NetStatusMsg) roundTrip(new NetStatusMsg(open(10), open(0), status))).getContent();
+        assertFalse(decoded.isFull());
+        assertEquals(20, decoded.getBaseStatusNr());
+        assertNodes(status.getAliveNodes(), decoded.getAliveNodes());
+
+        assertEquals(27, ((NetStatusAck) roundTrip(new NetStatusAck(open(0), nated(10, 1), 27))).getContent().getStatusNr());
+    }
+
+    @Test
+    public void contentRoundTrip() {
+        Pong pong = (Pong) SwimCodec.decodeContent(SwimCodec.encodeContent(pong(nodes(1000, 3), nodes(2000, 1), nodes(3000, 0), 1, 1)));
+        assertEquals(3, pong.getNewNodes().size());
+        assertEquals(1, pong.getSuspectedNodes().size());
+        assertEquals(Integer.valueOf(12000), pong.getSuspecters().get(pong.getSuspectedNodes().keySet().iterator().next()));
+    }
+
+    @Test
+    public void negativeValuesRoundTrip() {
+        NetPing decoded = (NetPing) roundTrip(new NetPing(open(-1), open(Integer.MAX_VALUE), -5, Integer.MIN_VALUE));
+        assertEquals(-5, decoded.getContent().getPingNr());
+        assertEquals(Integer.MIN_VALUE, decoded.getContent().getIncarnationCounter());
+    }
+
+    // Updates with parents of their own and shared ones, packed one by one while the parent table grows past 128 entries.
+    @Test
+    public void pongSizerIsUpperBound() {
+        NatedAddress src = nated(1, 10, 11, 12);
+        NatedAddress dst = nated(2, 12, 13);
+        Map<NatedAddress, Integer> none = new HashMap<NatedAddress, Integer>();
+        int empty = SwimCodec.sizeOf(new NetPong(src, dst, pong(none, none, none, 1000, 3)));
+
+        PongSizer sizer = new PongSizer(src, dst);
+        Map<NatedAddress, Integer> newNodes = new HashMap<NatedAddress, Integer>();
+        Map<NatedAddress, Integer> suspectedNodes = new HashMap<NatedAddress, Integer>();
+        for (int id = 100; id < 400; id++) {
+            NatedAddress address = id % 3 == 0 ? nated(id, 10, 20000 + id) : nated(id, 20000 + id, 30000 + id, 13);
+            if (id % 5 == 0) {
+                suspectedNodes.put(address, id);
+                sizer.add(address, id);
+                sizer.addSuspecter(id + 10000);
+            }
+            else {
+                newNodes.put(address, id);
+                sizer.add(address, id);
+            }
+            int size = SwimCodec.sizeOf(new NetPong(src, dst, pong(newNodes, suspectedNodes, none, 1000, 3)));
+            assertTrue(id + ": " + (size - empty) + " > " + sizer.size(), size - empty <= sizer.size());
+        }
+    }
+
+    @Test
+    public void maxSizeIsUpperBound() {
+        List<NetMsg> messages = new ArrayList<NetMsg>();
+        messages.add(new NetPing(open(1), nated(2, 3, 4), 300, 5));
+        messages.add(new NetPong(nated(1, 10, 11), open(2), pong(nodes(100, 40), nodes(200, 5), nodes(300, 3), 70000, 2)));
+        messages.add(new NetKIndirectPing(open(1), open(2), nated(3, 4), 9));
+        messages.add(new NetKIndirectPong(open(2), open(1), nated(3, 4), 6, 9));
+        messages.add(new NetKIndirectNack(open(2), open(1), nated(3, 4), 9));
+        messages.add(new NetAliveMsg(open(1), open(2), 12));
+        messages.add(new NetNATedPing(nated(1, 2), open(2), 128));
+        messages.add(new NetStatusMsg(open(10), open(0), new Status(17, 20, 21, nodes(10, 50), nodes(60, 2), nodes(70, 4))));
+        messages.add(new NetStatusAck(open(0), nated(10, 1), 27));
+        messages.add(new NetBundle(open(1), nated(2, 3), new ArrayList<NetMsg>(messages)));
+        for (NetMsg msg : messages) {
+            int size = SwimCodec.sizeOf(msg);
+            assertTrue(msg.getContent() + ": " + size + " > " + SwimCodec.maxSizeOf(msg), size <= SwimCodec.maxSizeOf(msg));
+            assertTrue(SwimCodec.sizeOfContent(msg.getContent()) <= SwimCodec.maxSizeOfContent(msg.getContent()));
+        }
+
+        //Without parents there is no table to overestimate.
+        NetMsg alive = new NetAliveMsg(open(1), open(2), 12);
+        assertEquals(SwimCodec.sizeOf(alive), SwimCodec.maxSizeOf(alive));
+    }
+
+    @Test
+    public void messageSizes() {
+        NatedAddress src = nated(1, 10, 11, 12);
+        NatedAddress dst = open(2);
+        //Tag 1, parent table 4, source 5 (id, parent count, three parent indexes), destination 2, ping number 2, incarnation 1.
+        assertEquals(15, SwimCodec.sizeOf(new NetPing(src, dst, 1000, 3)));
+        //Tag 1, parent table 4, source id 1, incarnation 1.
+        assertEquals(7, SwimCodec.sizeOfCompact(new NetPing(src, dst, 1000, 3), 3));
+        assertEquals(19, SwimCodec.sizeOf(new NetKIndirectPing(src, dst, nated(3, 10, 11, 12), 1000)));
+        assertEquals(20, SwimCodec.sizeOf(new NetKIndirectPong(src, dst, nated(3, 10, 11, 12), 3, 1000)));
+        assertEquals(15, SwimCodec.sizeOfCompact(new NetKIndirectPong(src, dst, nated(3, 10, 11, 12), 3, 1000), 3));
+        assertEquals(13, SwimCodec.sizeOf(new NetAliveMsg(src, dst, 3)));
+        assertEquals(14, SwimCodec.sizeOf(new NetNATedPing(src, dst, 1000)));
+
+        Map<NatedAddress, Integer> none = new HashMap<NatedAddress, Integer>();
+        int empty = SwimCodec.sizeOf(new NetPong(src, dst, pong(none, none, none, 1000, 3)));
+        assertEquals(18, empty);
+        //Half of the gossiped nodes are NATed behind the parents already in the table, the cost per gossip stays flat.
+        for (int count : new int[]{10, 100, 1000}) {
+            int size = SwimCodec.sizeOf(new NetPong(src, dst, pong(nodes(10000, count), none, none, 1000, 3)));
+            assertTrue(count + " gossips took " + size + " bytes", size - empty <= 6 * count);
+        }
+        //A suspicion carries the id of its suspecter: node id 2, parent count 1, incarnation 1, suspecter 2.
+        Map<NatedAddress, Integer> suspected = new HashMap<NatedAddress, Integer>();
+        suspected.put(open(200), 3);
+        assertEquals(empty + 6, SwimCodec.sizeOf(new NetPong(src, dst, pong(none, suspected, none, 1000, 3))));
+    }
+}
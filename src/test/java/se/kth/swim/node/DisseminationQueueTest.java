@@ -0,0 +1,108 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DisseminationQueueTest {
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NodeDetails entry(int id, int sendCounter) {
+        NatedAddress address = new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+        NodeDetails nodeInfo = new NodeDetails(address, 0, NodeDetails.Type.NEW);
+        nodeInfo.setSendCounter(sendCounter);
+        return nodeInfo;
+    }
+
+    private static List<Integer> order(DisseminationQueue queue) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (NodeDetails nodeInfo = queue.first(); nodeInfo != null; nodeInfo = queue.next(nodeInfo)) {
+            ids.add(nodeInfo.getAddress().getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void walksLeastSentFirstInArrivalOrder() {
+        DisseminationQueue queue = new DisseminationQueue();
+        queue.put(entry(1, 2));
+        queue.put(entry(2, 0));
+        queue.put(entry(3, 1));
+        queue.put(entry(4, 0));
+        assertEquals(Arrays.asList(2, 4, 3, 1), order(queue));
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void putReplacesTheEntryOfTheSameNode() {
+        DisseminationQueue queue = new DisseminationQueue();
+        queue.put(entry(1, 0));
+        queue.put(entry(2, 0));
+        NodeDetails newer = entry(1, 3);
+        queue.put(newer);
+        assertEquals(2, queue.size());
+        assertSame(newer, queue.get(1));
+        assertEquals(Arrays.asList(2, 1), order(queue));
+    }
+
+    @Test
+    public void putFirstGoesAheadOfItsBucket() {
+        DisseminationQueue queue = new DisseminationQueue();
+        queue.put(entry(1, 0));
+        queue.put(entry(2, 0));
+        queue.putFirst(entry(3, 0));
+        queue.putFirst(entry(2, 0));
+        assertEquals(Arrays.asList(2, 3, 1), order(queue));
+    }
+
+    @Test
+    public void markSentMovesAndDropsEntries() {
+        DisseminationQueue queue = new DisseminationQueue();
+        NodeDetails first = entry(1, 0);
+        NodeDetails second = entry(2, 1);
+        queue.put(first);
+        queue.put(second);
+        queue.put(entry(3, 0));
+        queue.markSent(Arrays.asList(first, second), 1.5);
+        assertEquals(Arrays.asList(3, 1), order(queue));
+        assertEquals(1, first.getSendCounter());
+        assertNull("sent more than the retransmit limit", queue.get(2));
+
+        //Entries replaced since they were sent are left alone.
+        queue.put(entry(1, 0));
+        queue.markSent(Arrays.asList(first), 1.5);
+        assertEquals(0, queue.get(1).getSendCounter());
+    }
+
+    @Test
+    public void growsPastTheInitialBuckets() {
+        DisseminationQueue queue = new DisseminationQueue();
+        queue.put(entry(1, 40));
+        queue.put(entry(2, 5));
+        assertEquals(Arrays.asList(2, 1), order(queue));
+        assertNotNull(queue.remove(2));
+        assertNull(queue.remove(2));
+        assertEquals(Arrays.asList(1), order(queue));
+        queue.remove(1);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.first());
+    }
+}
@@ -0,0 +1,97 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MembershipTableTest {
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress address(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static Set<Integer> set(int[] ids) {
+        Set<Integer> set = new HashSet<Integer>();
+        for (int id : ids) {
+            assertTrue("listed twice: " + id, set.add(id));
+        }
+        return set;
+    }
+
+    @Test
+    public void listsTheMembersChangedSinceAVersion() {
+        MembershipTable table = new MembershipTable();
+        table.put(address(1), MembershipTable.ALIVE, 0);
+        table.put(address(2), MembershipTable.ALIVE, 0);
+        int version = table.version();
+        assertEquals(0, table.changedSince(version).length);
+
+        table.setState(2, MembershipTable.SUSPECTED);
+        table.put(address(3), MembershipTable.ALIVE, 0);
+        table.put(address(2), MembershipTable.ALIVE, 1);
+        assertEquals(new HashSet<Integer>(Arrays.asList(2, 3)), set(table.changedSince(version)));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3)), set(table.changedSince(0)));
+
+        //A failed setState changes nothing.
+        assertFalse(table.setState(4, MembershipTable.DEAD));
+        assertEquals(2, table.changedSince(version).length);
+    }
+
+    @Test
+    public void trimmedChangesAreNotListed() {
+        MembershipTable table = new MembershipTable();
+        table.put(address(1), MembershipTable.ALIVE, 0);
+        int version = table.version();
+        table.put(address(2), MembershipTable.ALIVE, 0);
+        table.trimChanges(version);
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)), set(table.changedSince(0)));
+    }
+
+    // Random changes with versions taken now and then, checked against the change history, while the table rehashes and the log compacts.
+    @Test
+    public void matchesTheChangeHistory() {
+        Random rand = new Random(1);
+        MembershipTable table = new MembershipTable(4);
+        List<int[]> history = new ArrayList<int[]>();    //Member and version of every change.
+        List<Integer> versions = new ArrayList<Integer>();
+        for (int i = 0; i < 20000; i++) {
+            int id = rand.nextInt(500);
+            table.put(address(id), rand.nextBoolean() ? MembershipTable.ALIVE : MembershipTable.DEAD, i);
+            history.add(new int[]{id, table.version()});
+            if (rand.nextInt(50) == 0) {
+                versions.add(table.version());
+            }
+        }
+        for (int version : versions) {
+            Set<Integer> expected = new HashSet<Integer>();
+            for (int[] change : history) {
+                if (change[1] > version) {
+                    expected.add(change[0]);
+                }
+            }
+            assertEquals(expected, set(table.changedSince(version)));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.kth.swim.SwimConfig;
+import se.kth.swim.msg.Pong;
+import se.kth.swim.msg.codec.SwimCodec;
+import se.kth.swim.msg.net.NetPong;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NodeManagerTest {
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress open(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static NatedAddress nated(int id, int... parentIds) {
+        Set<NatedAddress> parents = new HashSet<NatedAddress>();
+        for (int parentId : parentIds) {
+            parents.add(open(parentId));
+        }
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id), NatType.NAT, parents);
+    }
+
+    // Every member behind parents of its own, so the parent table of the pong grows with every update.
+    @Test
+    public void pongFitsTheByteBudget() {
+        NatedAddress self = nated(1, 2, 3);
+        NatedAddress peer = nated(4, 5, 6);
+        Map<NatedAddress, Integer> none = new HashMap<NatedAddress, Integer>();
+        int header = SwimCodec.sizeOf(new NetPong(self, peer, new Pong(none, none, none, none, 1, 0)));
+
+        for (int budget : new int[]{60, 300, 1000, 1408}) {
+            SwimConfig config = new SwimConfig.Builder().piggybackByteBudget(budget).piggybackMessageSize(1000).build();
+            NodeManager manager = new NodeManager(self, 1, config);
+            for (int id = 100; id < 1100; id++) {
+                manager.addAlive(nated(id, 100000 + 3 * id, 100001 + 3 * id, 100002 + 3 * id), id);
+                if (id % 4 == 0) {
+                    manager.addSuspected(nated(id, 100000 + 3 * id, 100001 + 3 * id, 100002 + 3 * id), id, 7);
+                }
+            }
+            for (int ping = 0; ping < 20; ping++) {
+                Pong pong = manager.getPong(peer, ping, 0);
+                assertFalse(pong.getNewNodes().isEmpty() && pong.getSuspectedNodes().isEmpty());
+                int size = SwimCodec.encode(new NetPong(self, peer, pong)).remaining();
+                assertTrue(budget + ": " + size + " > " + header + " + " + budget, size <= header + budget);
+            }
+        }
+    }
+}
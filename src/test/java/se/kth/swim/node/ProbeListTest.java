@@ -0,0 +1,106 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ProbeListTest {
+
+    private static ProbeList list(int size) {
+        ProbeList list = new ProbeList(new Random(1));
+        for (int id = 0; id < size; id++) {
+            assertTrue(list.add(id));
+        }
+        return list;
+    }
+
+    private static Set<Integer> probeRound(ProbeList list) {
+        Set<Integer> probed = new HashSet<Integer>();
+        int count = list.size();
+        for (int i = 0; i < count; i++) {
+            assertTrue("probed twice in a round", probed.add(list.next()));
+        }
+        return probed;
+    }
+
+    @Test
+    public void emptyListHasNothingToProbe() {
+        ProbeList list = new ProbeList(new Random(1));
+        assertEquals(-1, list.next());
+        assertEquals(0, list.sample(3).length);
+    }
+
+    @Test
+    public void everyIdIsProbedOnceARound() {
+        ProbeList list = list(50);
+        for (int round = 0; round < 10; round++) {
+            assertEquals(50, probeRound(list).size());
+            assertEquals(0, list.remaining());
+        }
+        assertFalse(list.add(3));
+    }
+
+    @Test
+    public void removalMidRoundKeepsTheRoundIntact() {
+        ProbeList list = list(20);
+        Set<Integer> probed = new HashSet<Integer>();
+        for (int i = 0; i < 8; i++) {
+            probed.add(list.next());
+        }
+        int probedId = probed.iterator().next();
+        int unprobedId = -1;
+        for (int id = 0; id < 20; id++) {
+            if (!probed.contains(id)) {
+                unprobedId = id;
+                break;
+            }
+        }
+        assertTrue(list.remove(probedId));
+        assertTrue(list.remove(unprobedId));
+        assertFalse(list.remove(unprobedId));
+        assertFalse(list.contains(unprobedId));
+        assertEquals(11, list.remaining());
+
+        while (list.remaining() > 0) {
+            int id = list.next();
+            assertTrue("probed twice in a round", probed.add(id));
+            assertTrue(id != unprobedId);
+        }
+        probed.remove(probedId);
+        assertEquals(18, probed.size());
+    }
+
+    @Test
+    public void idAddedMidRoundIsProbedInThatRound() {
+        ProbeList list = list(10);
+        list.next();
+        list.add(100);
+        Set<Integer> rest = new HashSet<Integer>();
+        while (list.remaining() > 0) {
+            rest.add(list.next());
+        }
+        assertTrue(rest.contains(100));
+        assertEquals(10, rest.size());
+    }
+
+    @Test
+    public void sampleIsDistinctAndLeavesTheRoundAlone() {
+        ProbeList list = list(30);
+        list.next();
+        int remaining = list.remaining();
+        for (int i = 0; i < 100; i++) {
+            Set<Integer> sample = new HashSet<Integer>();
+            for (int id : list.sample(5)) {
+                assertTrue(list.contains(id));
+                sample.add(id);
+            }
+            assertEquals(5, sample.size());
+        }
+        assertEquals(remaining, list.remaining());
+        assertEquals(30, list.sample(40).length);
+    }
+}
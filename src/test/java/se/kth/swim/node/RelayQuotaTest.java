@@ -0,0 +1,142 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.kth.swim.msg.RelayLoad;
+
+import static org.junit.Assert.*;
+
+public class RelayQuotaTest {
+
+    private static final int RATE = 100;
+    private static final int BURST = 10;
+    private static final int MAX_CHILDREN = 8;
+
+    private static int relayed(RelayQuota quota, int childId, int messages, long now) {
+        int relayed = 0;
+        for (int i = 0; i < messages; i++) {
+            if (quota.tryRelay(childId, now)) {
+                relayed++;
+            }
+        }
+        return relayed;
+    }
+
+    @Test
+    public void burstThenRate() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        quota.heardFrom(1, 0);
+        assertEquals(BURST, relayed(quota, 1, 20, 0));
+        assertEquals(10, quota.getDropped());
+        //100 messages a second refill one token every 10 ms.
+        assertEquals(5, relayed(quota, 1, 20, 50));
+        assertEquals(BURST, relayed(quota, 1, 20, 10000));
+        assertEquals(25, quota.getRelayed());
+    }
+
+    @Test
+    public void childrenHaveTheirOwnBuckets() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        quota.heardFrom(1, 0);
+        quota.heardFrom(2, 0);
+        assertEquals(BURST, relayed(quota, 1, 20, 0));
+        assertEquals(BURST, relayed(quota, 2, 20, 0));
+        assertEquals(2, quota.getChildren());
+    }
+
+    @Test
+    public void unknownDestinationsShareOneBucket() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        int relayed = 0;
+        for (int id = 100; id < 1100; id++) {
+            relayed += relayed(quota, id, 1, 0);
+        }
+        assertEquals(BURST, relayed);
+        assertEquals(0, quota.getChildren());
+
+        //A child that heartbeats gets a full bucket of its own.
+        quota.heardFrom(100, 0);
+        assertEquals(1, quota.getChildren());
+        assertEquals(BURST, relayed(quota, 100, 20, 0));
+    }
+
+    @Test
+    public void idleChildrenAreForgotten() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        for (int id = 0; id < 100; id++) {
+            quota.heardFrom(id, id % 2 == 0 ? 0 : 1000);
+        }
+        assertEquals(100, quota.getChildren());
+        quota.forgetIdle(500);
+        assertEquals(50, quota.getChildren());
+        quota.heardFrom(1, 2000);
+        quota.forgetIdle(1500);
+        assertEquals(1, quota.getChildren());
+
+        //A forgotten child is back on the shared bucket.
+        assertEquals(BURST, relayed(quota, 3, 20, 2000));
+        assertEquals(0, relayed(quota, 5, 1, 2000));
+    }
+
+    @Test
+    public void saturatedOnChildrenWithHysteresis() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        //Child i last heartbeat at i * 100 ms.
+        for (int id = 1; id < MAX_CHILDREN; id++) {
+            quota.heardFrom(id, id * 100);
+        }
+        assertFalse(quota.updateLoad().isSaturated());
+        quota.heardFrom(MAX_CHILDREN, MAX_CHILDREN * 100);
+        RelayLoad load = quota.updateLoad();
+        assertTrue(load.isSaturated());
+        assertEquals(MAX_CHILDREN, load.getChildren());
+        assertEquals(MAX_CHILDREN, load.getMaxChildren());
+
+        //One child leaving does not clear it, falling to three quarters of the maximum does.
+        quota.forgetIdle(200);
+        assertEquals(MAX_CHILDREN - 1, quota.getChildren());
+        assertTrue(quota.updateLoad().isSaturated());
+        quota.forgetIdle(300);
+        assertEquals(MAX_CHILDREN * 3 / 4, quota.getChildren());
+        assertFalse(quota.updateLoad().isSaturated());
+    }
+
+    // Drops now and then in a period each, the advertised state must not follow them period by period.
+    @Test
+    public void occasionalDropsDoNotFlipTheLoad() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        quota.heardFrom(1, 0);
+        long now = 0;
+        for (int period = 0; period < 40; period++) {
+            now += 500;
+            relayed(quota, 1, period % 3 == 0 ? BURST + 1 : 1, now);
+            assertFalse("saturated in period " + period, quota.updateLoad().isSaturated());
+        }
+    }
+
+    @Test
+    public void sustainedDropsSaturateUntilTheyStop() {
+        RelayQuota quota = new RelayQuota(RATE, BURST, MAX_CHILDREN);
+        quota.heardFrom(1, 0);
+        long now = 0;
+        int periods = 0;
+        boolean saturated = false;
+        while (!saturated) {
+            now += 500;
+            relayed(quota, 1, 3 * BURST + 50, now);
+            saturated = quota.updateLoad().isSaturated();
+            assertTrue(++periods < 10);
+        }
+
+        //It stays saturated for a while after the drops stop, then clears for good.
+        assertTrue(quota.updateLoad().isSaturated());
+        periods = 0;
+        while (quota.updateLoad().isSaturated()) {
+            assertTrue(++periods < 40);
+        }
+        for (int period = 0; period < 10; period++) {
+            RelayLoad load = quota.updateLoad();
+            assertFalse(load.isSaturated());
+            assertTrue(load.getDropRate() < 0.1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.kth.swim.msg.RelayLoad;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RelaySelectorTest {
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress open(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static NatedAddress nated(int id, NatedAddress... parents) {
+        Set<NatedAddress> parentSet = new HashSet<NatedAddress>();
+        for (NatedAddress parent : parents) {
+            parentSet.add(parent);
+        }
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id), NatType.NAT, parentSet);
+    }
+
+    // With two parents both are compared on every pick, so the better one always wins.
+    private static void assertPicks(NatedAddress expected, RelaySelector selector, NatedAddress destination) {
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expected.getId(), selector.select(destination).getId());
+        }
+    }
+
+    @Test
+    public void saturatedRelayLoses() {
+        NatedAddress saturated = open(1);
+        NatedAddress free = open(2);
+        NatedAddress child = nated(10, saturated, free);
+        RelaySelector selector = new RelaySelector(new Random(1));
+        selector.advertised(saturated, new RelayLoad(2, 16, 3.0, true));
+        selector.advertised(free, new RelayLoad(12, 16, 0.0, false));
+        //Even though the saturated one answers heartbeats faster.
+        selector.pongReceived(saturated, 10);
+        selector.pongReceived(free, 200);
+        assertPicks(free, selector, child);
+    }
+
+    @Test
+    public void lessLoadedRelayWins() {
+        NatedAddress busy = open(1);
+        NatedAddress idle = open(2);
+        NatedAddress child = nated(10, busy, idle);
+        RelaySelector selector = new RelaySelector(new Random(1));
+        selector.advertised(busy, new RelayLoad(10, 16, 0.0, false));
+        selector.advertised(idle, new RelayLoad(3, 16, 0.0, false));
+        assertPicks(idle, selector, child);
+
+        //A load advertised later replaces the one seen before.
+        selector.advertised(idle, new RelayLoad(15, 16, 0.0, false));
+        assertPicks(busy, selector, child);
+    }
+
+    @Test
+    public void deadRelayLosesWhateverItsLoad() {
+        NatedAddress dead = open(1);
+        NatedAddress alive = open(2);
+        NatedAddress child = nated(10, dead, alive);
+        RelaySelector selector = new RelaySelector(new Random(1));
+        selector.advertised(dead, new RelayLoad(0, 16, 0.0, false));
+        selector.advertised(alive, new RelayLoad(15, 16, 0.0, false));
+        selector.pingSent(dead);
+        selector.pingTimedOut(dead);
+        assertPicks(alive, selector, child);
+
+        //A pong brings it back.
+        selector.pingSent(dead);
+        selector.pongReceived(dead, 50);
+        assertPicks(dead, selector, child);
+    }
+
+    // A parent without an advertised load is ranked with the mean load, the comparison then falls through to the round trips.
+    @Test
+    public void missingLoadRanksAsTheMean() {
+        NatedAddress light = open(1);
+        NatedAddress heavy = open(2);
+        NatedAddress unknown = open(3);
+        RelaySelector selector = new RelaySelector(new Random(1));
+        selector.advertised(light, new RelayLoad(2, 16, 0.0, false));
+        selector.advertised(heavy, new RelayLoad(14, 16, 0.0, false));
+        selector.decay();
+        assertPicks(light, selector, nated(10, light, unknown));
+        assertPicks(unknown, selector, nated(11, heavy, unknown));
+
+        //Ties on load are broken by the measured round trip, a parent never heartbeat gets the mean round trip.
+        NatedAddress mean = open(4);
+        selector.advertised(mean, new RelayLoad(8, 16, 0.0, false));
+        selector.pongReceived(light, 100);
+        selector.pongReceived(heavy, 300);
+        selector.pongReceived(mean, 150);
+        selector.decay();
+        assertPicks(mean, selector, nated(12, mean, unknown));
+    }
+
+    // With nothing known about any parent, the routed counts spread the messages over all of them.
+    @Test
+    public void unknownRelaysShareTheTraffic() {
+        NatedAddress a = open(1);
+        NatedAddress b = open(2);
+        NatedAddress c = open(3);
+        NatedAddress child = nated(10, a, b, c);
+        RelaySelector selector = new RelaySelector(new Random(1));
+        int[] picks = new int[4];
+        for (int i = 0; i < 300; i++) {
+            NatedAddress relay = selector.select(child);
+            selector.routed(relay);
+            picks[relay.getId()]++;
+        }
+        for (int id = 1; id <= 3; id++) {
+            assertTrue("relay " + id + " picked " + picks[id] + " times", picks[id] >= 80);
+        }
+    }
+
+    @Test
+    public void singleParentIsAlwaysPicked() {
+        NatedAddress parent = open(1);
+        RelaySelector selector = new RelaySelector(new Random(1));
+        selector.advertised(parent, new RelayLoad(16, 16, 5.0, true));
+        assertPicks(parent, selector, nated(10, parent));
+    }
+}
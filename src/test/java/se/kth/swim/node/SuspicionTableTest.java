@@ -0,0 +1,135 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.kth.swim.SwimConfig;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class SuspicionTableTest {
+
+    private static final SwimConfig CONFIG = new SwimConfig();
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress address(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    // A probe of the node that failed, its pong timeout still scheduled.
+    private static UUID failedProbe(PendingPings pendingPings, int pingNr, NatedAddress target) {
+        UUID timeoutId = UUID.randomUUID();
+        pendingPings.add(pingNr, target, 0, 100);
+        pendingPings.get(pingNr).setTimeoutId(timeoutId);
+        return timeoutId;
+    }
+
+    @Test
+    public void secondFailedProbeOfASuspectedNodeIsReleased() {
+        PendingPings pendingPings = new PendingPings();
+        SuspicionTable suspicions = new SuspicionTable(pendingPings);
+        NatedAddress target = address(7);
+        List<UUID> cancelled = new ArrayList<UUID>();
+
+        failedProbe(pendingPings, 1, target);
+        Suspicion suspicion = suspicions.suspect(target, 0, 1, null, 0, CONFIG, cancelled);
+        assertNotNull(suspicion);
+        assertEquals(1, pendingPings.size());
+
+        UUID secondTimeout = failedProbe(pendingPings, 2, target);
+        assertNull("an own suspicion does not confirm", suspicions.suspect(target, 0, 2, null, 10, CONFIG, cancelled));
+        assertEquals(1, pendingPings.size());
+        assertTrue(pendingPings.contains(1));
+        assertEquals(Arrays.asList(secondTimeout), cancelled);
+        assertEquals(1, suspicions.get(7).getPingNr());
+
+        //Ending the suspicion releases the probe it held.
+        cancelled.clear();
+        suspicion.setTimeoutId(UUID.randomUUID());
+        suspicions.end(7, cancelled);
+        assertEquals(0, pendingPings.size());
+        assertEquals(2, cancelled.size());
+        assertNull(suspicions.get(7));
+    }
+
+    @Test
+    public void gossipedSuspicionTakesTheFirstFailedProbe() {
+        PendingPings pendingPings = new PendingPings();
+        SuspicionTable suspicions = new SuspicionTable(pendingPings);
+        NatedAddress target = address(7);
+        List<UUID> cancelled = new ArrayList<UUID>();
+
+        assertNotNull(suspicions.suspect(target, 0, Suspicion.NO_PING, 3, 0, CONFIG, cancelled));
+        failedProbe(pendingPings, 1, target);
+        suspicions.suspect(target, 0, 1, null, 10, CONFIG, cancelled);
+        assertEquals(1, suspicions.get(7).getPingNr());
+        assertEquals(1, pendingPings.size());
+        assertTrue(cancelled.isEmpty());
+    }
+
+    @Test
+    public void staleProbeIsReleased() {
+        PendingPings pendingPings = new PendingPings();
+        SuspicionTable suspicions = new SuspicionTable(pendingPings);
+        NatedAddress target = address(7);
+        List<UUID> cancelled = new ArrayList<UUID>();
+
+        suspicions.suspect(target, 2, Suspicion.NO_PING, 3, 0, CONFIG, cancelled);
+        failedProbe(pendingPings, 1, target);
+        assertNull(suspicions.suspect(target, 1, 1, null, 10, CONFIG, cancelled));
+        assertEquals(0, pendingPings.size());
+        assertEquals(1, cancelled.size());
+    }
+
+    @Test
+    public void higherIncarnationReplacesTheSuspicionAndItsProbe() {
+        PendingPings pendingPings = new PendingPings();
+        SuspicionTable suspicions = new SuspicionTable(pendingPings);
+        NatedAddress target = address(7);
+        List<UUID> cancelled = new ArrayList<UUID>();
+
+        UUID firstTimeout = failedProbe(pendingPings, 1, target);
+        Suspicion first = suspicions.suspect(target, 0, 1, null, 0, CONFIG, cancelled);
+        UUID deadTimeout = UUID.randomUUID();
+        first.setTimeoutId(deadTimeout);
+
+        failedProbe(pendingPings, 2, target);
+        Suspicion second = suspicions.suspect(target, 1, 2, null, 10, CONFIG, cancelled);
+        assertNotSame(first, second);
+        assertEquals(2, second.getPingNr());
+        assertEquals(1, pendingPings.size());
+        assertTrue(pendingPings.contains(2));
+        assertTrue(cancelled.contains(firstTimeout));
+        assertTrue(cancelled.contains(deadTimeout));
+        assertEquals(1, suspicions.size());
+    }
+
+    @Test
+    public void onlyNewConfirmationsRescheduleTheDeadTimeout() {
+        SuspicionTable suspicions = new SuspicionTable(new PendingPings());
+        NatedAddress target = address(7);
+        List<UUID> cancelled = new ArrayList<UUID>();
+
+        suspicions.suspect(target, 0, Suspicion.NO_PING, null, 0, CONFIG, cancelled);
+        assertNotNull(suspicions.suspect(target, 0, Suspicion.NO_PING, 3, 10, CONFIG, cancelled));
+        assertNull(suspicions.suspect(target, 0, Suspicion.NO_PING, 3, 20, CONFIG, cancelled));
+        assertEquals(1, suspicions.get(7).getConfirmations());
+    }
+}
@@ -0,0 +1,121 @@
+package se.kth.swim.node;
+
+import org.junit.Test;
+import se.kth.swim.msg.Pong;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.*;
+
+public class SuspicionTest {
+
+    private static final long MIN_TIMEOUT = 500;
+    private static final long MAX_TIMEOUT = 2000;
+
+    private static InetAddress localHost;
+
+    static {
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static NatedAddress address(int id) {
+        return new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+    }
+
+    private static Suspicion suspicion(int expectedConfirmations) {
+        return new Suspicion(address(99), 0, Suspicion.NO_PING, 1000, MIN_TIMEOUT, MAX_TIMEOUT, expectedConfirmations);
+    }
+
+    // The suspecter id a node gossips for a suspicion it learned from the given pong.
+    private static int relay(NatedAddress relayer, Pong received, NatedAddress suspected) {
+        NodeManager manager = new NodeManager(relayer, 1);
+        manager.addAlive(suspected, 0);
+        manager.addSuspected(suspected, received.getSuspectedNodes().get(suspected), received.getSuspecters().get(suspected));
+        Pong pong = manager.getPong(address(50), 1, 0);
+        assertEquals(received.getSuspectedNodes().get(suspected), pong.getSuspectedNodes().get(suspected));
+        return pong.getSuspecters().get(suspected);
+    }
+
+    @Test
+    public void shrinksWithIndependentConfirmations() {
+        Suspicion suspicion = suspicion(3);
+        assertEquals(MAX_TIMEOUT, suspicion.getTimeout());
+        long previous = suspicion.getTimeout();
+        for (int id = 1; id <= 3; id++) {
+            assertTrue(suspicion.confirm(id));
+            assertTrue(suspicion.getTimeout() < previous);
+            previous = suspicion.getTimeout();
+        }
+        assertEquals(MIN_TIMEOUT, suspicion.getTimeout());
+
+        //Confirmations past the expected count change nothing.
+        assertFalse(suspicion.confirm(4));
+        assertEquals(3, suspicion.getConfirmations());
+        assertEquals(MIN_TIMEOUT, suspicion.getTimeout());
+    }
+
+    @Test
+    public void repeatedConfirmationCountsOnce() {
+        Suspicion suspicion = suspicion(3);
+        assertTrue(suspicion.confirm(7));
+        long timeout = suspicion.getTimeout();
+        assertFalse(suspicion.confirm(7));
+        assertFalse(suspicion.confirm(7));
+        assertEquals(1, suspicion.getConfirmations());
+        assertEquals(timeout, suspicion.getTimeout());
+    }
+
+    // Node 1 suspects node 99, nodes 2, 3 and 4 pass the suspicion on, each relay still names node 1.
+    @Test
+    public void relayedSuspicionDoesNotShortenTheTimeout() {
+        NatedAddress suspected = address(99);
+        NodeManager suspecter = new NodeManager(address(1), 1);
+        suspecter.addAlive(suspected, 0);
+        suspecter.addSuspected(suspected);
+        Pong gossip = suspecter.getPong(address(50), 1, 0);
+        assertEquals(Integer.valueOf(1), gossip.getSuspecters().get(suspected));
+
+        Suspicion suspicion = suspicion(3);
+        suspicion.confirm(gossip.getSuspecters().get(suspected));
+        long timeout = suspicion.getTimeout();
+        for (int relayer = 2; relayer <= 4; relayer++) {
+            int suspecterId = relay(address(relayer), gossip, suspected);
+            assertEquals(1, suspecterId);
+            assertFalse(suspicion.confirm(suspecterId));
+        }
+        assertEquals(1, suspicion.getConfirmations());
+        assertEquals(timeout, suspicion.getTimeout());
+
+        //A node that raises the suspicion itself does confirm it.
+        NodeManager other = new NodeManager(address(5), 1);
+        other.addAlive(suspected, 0);
+        other.addSuspected(suspected);
+        assertTrue(suspicion.confirm(other.getPong(address(50), 1, 0).getSuspecters().get(suspected)));
+        assertTrue(suspicion.getTimeout() < timeout);
+    }
+
+    @Test
+    public void remainingCountsFromTheStart() {
+        Suspicion suspicion = suspicion(1);
+        assertEquals(MAX_TIMEOUT, suspicion.remaining(1000));
+        assertEquals(MAX_TIMEOUT - 300, suspicion.remaining(1300));
+        suspicion.confirm(1);
+        assertEquals(MIN_TIMEOUT - 300, suspicion.remaining(1300));
+        assertEquals(0, suspicion.remaining(1000 + MAX_TIMEOUT));
+    }
+
+    @Test
+    public void noExpectedConfirmationsUsesTheMinimum() {
+        assertEquals(MIN_TIMEOUT, suspicion(0).getTimeout());
+        Suspicion inverted = new Suspicion(address(99), 0, Suspicion.NO_PING, 0, MAX_TIMEOUT, MIN_TIMEOUT, 3);
+        assertEquals(MIN_TIMEOUT, inverted.getTimeout());
+    }
+}
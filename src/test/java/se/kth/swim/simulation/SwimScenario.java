@@ -25,6 +25,7 @@ import java.util.Random;
 import java.util.Set;
 import se.kth.swim.HostComp;
 import se.kth.swim.SwimComp;
+import se.kth.swim.SwimConfig;
 import se.kth.swim.BootstrapComp;
 import se.kth.swim.croupier.CroupierConfig;
 import se.sics.p2ptoolbox.simulator.cmd.OperationCmd;
@@ -67,6 +68,7 @@ public class SwimScenario {
   
 
     private static CroupierConfig croupierConfig = new CroupierConfig(10, 5, 1000, 500);
+    private static SwimConfig swimConfig = new SwimConfig();
 
     static {
         try {
@@ -130,7 +132,7 @@ public class SwimScenario {
                     }
                   
                     long nodeSeed = seed + nodeId;
-                    return new HostComp.HostInit(nodeAddress, bootstrapNodes, aggregatorServer, nodeSeed, croupierConfig);
+                    return new HostComp.HostInit(nodeAddress, bootstrapNodes, aggregatorServer, nodeSeed, croupierConfig, swimConfig);
                 }
 
                 @Override
@@ -48,7 +48,7 @@ public class NatBootSimulation {
           /**
          * Tests the Nodes including the ones behind Nats by varying 
          *   1. Number of nodes at the third parameter 
-         *   2. Piggy back Message size set in SwimComp.java
+         *   2. Piggy back Message size set in the SwimConfig of SwimScenario.java
          *   3. Bootstrap size at the fourth parameter
       **/
           
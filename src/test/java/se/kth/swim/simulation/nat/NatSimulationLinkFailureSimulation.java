@@ -45,7 +45,7 @@ public class NatSimulationLinkFailureSimulation {
         /** 
          * Tests the Nodes including the ones behind Nats(NATed Nodes) by Simulating Link Failure and varying 
          *   1. Number of nodes at the third parameter 
-         *   2. Piggy back Message size set in SwimComp.java
+         *   2. Piggy back Message size set in the SwimConfig of SwimScenario.java
          *   3. Bootstrap size at the fourth parameter
          *   4. Number of link fails at the seventh parameter
          *   5. Start of failure at the last parameter
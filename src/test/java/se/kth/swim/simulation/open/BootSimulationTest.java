@@ -46,7 +46,7 @@ public class BootSimulationTest {
          /**
          * Tests Only OPEN Nodes by varying 
          *   1. Number of nodes at the third parameter 
-         *   2. Piggy back Message size set in SwimComp.java
+         *   2. Piggy back Message size set in the SwimConfig of SwimScenario.java
          *   3. Bootstrap size at the fourth parameter
         **/
          
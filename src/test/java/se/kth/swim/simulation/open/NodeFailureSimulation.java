@@ -48,7 +48,7 @@ public class NodeFailureSimulation {
         /**
          * Tests Only OPEN Nodes by Simulating Node Failure and varying 
          *   1. Number of nodes at the third parameter 
-         *   2. Piggy back Message size set in SwimComp.java
+         *   2. Piggy back Message size set in the SwimConfig of SwimScenario.java
          *   3. Bootstrap size at the fourth parameter
          *   4. Number of Node fails at the seventh parameter
          *   5. Fail Interval 
@@ -47,7 +47,7 @@ public class SimulationLinkFailure {
          /** 
          * Tests Only OPEN Nodes by Simulating Link Failure and varying 
          *   1. Number of nodes at the third parameter 
-         *   2. Piggy back Message size set in SwimComp.java
+         *   2. Piggy back Message size set in the SwimConfig of SwimScenario.java
          *   3. Bootstrap size at the fourth parameter
          *   4. Number of Node fails at the seventh parameter
          *   5. Start of failure at the last parameter
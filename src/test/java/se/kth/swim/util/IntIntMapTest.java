@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntIntMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntIntMap map = new IntIntMap();
+        map.put(7, 1);
+        map.put(7, 2);
+        assertEquals(2, map.get(7, -1));
+        assertEquals(-1, map.get(8, -1));
+        assertTrue(map.containsKey(7));
+        assertEquals(1, map.size());
+        assertTrue(map.remove(7));
+        assertFalse(map.remove(7));
+        assertTrue(map.isEmpty());
+    }
+
+    // Zero is a valid key and value, used slots are tracked apart from the keys.
+    @Test
+    public void zeroKeysAndValues() {
+        IntIntMap map = new IntIntMap(2);
+        assertFalse(map.containsKey(0));
+        map.put(0, 0);
+        assertTrue(map.containsKey(0));
+        assertEquals(0, map.get(0, -1));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random rand = new Random(1);
+        IntIntMap map = new IntIntMap(4);
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            int key = rand.nextInt(300) - 150;
+            if (rand.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            }
+            else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = -150; key < 150; key++) {
+            assertEquals(expected.containsKey(key) ? expected.get(key) : -1, map.get(key, -1));
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(expected.keySet().iterator().next()));
+    }
+}
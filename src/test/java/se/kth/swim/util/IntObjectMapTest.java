@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntObjectMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntObjectMap<String> map = new IntObjectMap<String>();
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals("b", map.get(7));
+        assertTrue(map.containsKey(7));
+        assertFalse(map.containsKey(8));
+        assertNull(map.get(8));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(7));
+        assertNull(map.remove(7));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void negativeAndZeroKeys() {
+        IntObjectMap<String> map = new IntObjectMap<String>(2);
+        map.put(0, "zero");
+        map.put(-1, "minus one");
+        map.put(Integer.MIN_VALUE, "min");
+        assertEquals("zero", map.get(0));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("min", map.get(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void rejectsNullValues() {
+        try {
+            new IntObjectMap<String>().put(1, null);
+            fail("null value stored");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // Random puts and removes over a small key range, so probe sequences collide and removals shift entries back.
+    @Test
+    public void matchesHashMap() {
+        Random rand = new Random(1);
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>(4);
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            int key = rand.nextInt(300) - 150;
+            if (rand.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = -150; key < 150; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        int iterated = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.isUsed(slot)) {
+                assertEquals(expected.get(map.keyAt(slot)), map.valueAt(slot));
+                iterated++;
+            }
+        }
+        assertEquals(expected.size(), iterated);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(expected.keySet().iterator().next()));
+    }
+}
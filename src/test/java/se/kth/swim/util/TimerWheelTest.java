@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private static List<String> tick(TimerWheel<String> wheel) {
+        List<String> expired = new ArrayList<String>();
+        wheel.tick(expired);
+        return expired;
+    }
+
+    @Test
+    public void firesOnTheExpiryTickInScheduleOrder() {
+        TimerWheel<String> wheel = new TimerWheel<String>(8);
+        wheel.schedule(UUID.randomUUID(), "b", 3, 0);
+        wheel.schedule(UUID.randomUUID(), "a", 1, 0);
+        wheel.schedule(UUID.randomUUID(), "c", 3, 0);
+        wheel.schedule(UUID.randomUUID(), "now", 0, 0);
+        assertEquals(4, wheel.size());
+        assertEquals(Arrays.asList("a", "now"), tick(wheel));
+        assertTrue(tick(wheel).isEmpty());
+        assertEquals(Arrays.asList("b", "c"), tick(wheel));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void delaysPastOneTurnWaitForTheirRound() {
+        TimerWheel<String> wheel = new TimerWheel<String>(4);
+        wheel.schedule(UUID.randomUUID(), "late", 9, 0);
+        wheel.schedule(UUID.randomUUID(), "turn", 4, 0);
+        for (int i = 1; i < 4; i++) {
+            assertTrue(tick(wheel).isEmpty());
+        }
+        assertEquals(Arrays.asList("turn"), tick(wheel));
+        for (int i = 5; i < 9; i++) {
+            assertTrue(tick(wheel).isEmpty());
+        }
+        assertEquals(Arrays.asList("late"), tick(wheel));
+    }
+
+    @Test
+    public void cancelledTimersDoNotFire() {
+        TimerWheel<String> wheel = new TimerWheel<String>(4);
+        UUID first = UUID.randomUUID();
+        UUID middle = UUID.randomUUID();
+        UUID last = UUID.randomUUID();
+        wheel.schedule(first, "first", 2, 0);
+        wheel.schedule(middle, "middle", 2, 0);
+        wheel.schedule(last, "last", 2, 0);
+        assertTrue(wheel.cancel(middle));
+        assertFalse(wheel.cancel(middle));
+        assertTrue(wheel.cancel(first));
+        assertEquals(1, wheel.size());
+        tick(wheel);
+        assertEquals(Arrays.asList("last"), tick(wheel));
+        assertFalse("already fired", wheel.cancel(last));
+    }
+
+    @Test
+    public void schedulingAnIdAgainReplacesItsTimer() {
+        TimerWheel<String> wheel = new TimerWheel<String>(4);
+        UUID id = UUID.randomUUID();
+        wheel.schedule(id, "old", 1, 0);
+        wheel.schedule(id, "new", 2, 0);
+        assertEquals(1, wheel.size());
+        assertTrue(tick(wheel).isEmpty());
+        assertEquals(Arrays.asList("new"), tick(wheel));
+    }
+
+    @Test
+    public void periodicTimersFireUntilCancelled() {
+        TimerWheel<String> wheel = new TimerWheel<String>(4);
+        UUID id = UUID.randomUUID();
+        //A period of a whole turn lands back in the slot being walked.
+        wheel.schedule(id, "p", 2, 4);
+        List<Integer> fired = new ArrayList<Integer>();
+        for (int t = 1; t <= 14; t++) {
+            if (!tick(wheel).isEmpty()) {
+                fired.add(t);
+            }
+        }
+        assertEquals(Arrays.asList(2, 6, 10, 14), fired);
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.cancel(id));
+        for (int t = 0; t < 8; t++) {
+            assertTrue(tick(wheel).isEmpty());
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    // Random schedules and cancels, checked against the expiry tick of every live timer.
+    @Test
+    public void matchesExpiryTicks() {
+        Random rand = new Random(1);
+        TimerWheel<String> wheel = new TimerWheel<String>(16);
+        Map<UUID, Long> due = new HashMap<UUID, Long>();
+        List<UUID> ids = new ArrayList<UUID>();
+        for (long now = 0; now < 5000; now++) {
+            for (int i = rand.nextInt(4); i > 0; i--) {
+                UUID id = UUID.randomUUID();
+                long delay = 1 + rand.nextInt(100);
+                wheel.schedule(id, id.toString(), delay, 0);
+                due.put(id, now + delay);
+                ids.add(id);
+            }
+            if (!ids.isEmpty() && rand.nextInt(3) == 0) {
+                UUID id = ids.get(rand.nextInt(ids.size()));
+                assertEquals(due.remove(id) != null, wheel.cancel(id));
+            }
+            for (String payload : tick(wheel)) {
+                Long expected = due.remove(UUID.fromString(payload));
+                assertNotNull(expected);
+                assertEquals(now + 1, expected.longValue());
+            }
+            assertEquals(due.size(), wheel.size());
+        }
+    }
+}